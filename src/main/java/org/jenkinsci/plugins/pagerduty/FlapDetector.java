@@ -0,0 +1,90 @@
+package org.jenkinsci.plugins.pagerduty;
+
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.Run;
+import hudson.model.listeners.ItemListener;
+import org.jenkinsci.plugins.pagerduty.history.BuildResultHistory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tells whether a job is flapping, i.e. keeps alternating between results that trigger an incident and
+ * results that do not.
+ *
+ * A job starts flapping once its last {@link PagerDutyGlobalConfiguration#getFlapWindow() window} builds
+ * changed between the two at least {@code flapStartTransitions} times, and only stops again once they
+ * changed at most {@code flapStopTransitions} times. The gap between the two keeps a job from flipping in
+ * and out of the flapping state itself. While a job is flapping its incident is kept open and updated
+ * instead of being resolved and triggered again with every build.
+ *
+ * All that is kept per job is whether it is flapping; the transitions are counted from the
+ * {@link BuildResultHistory}.
+ */
+public final class FlapDetector {
+
+    private static final FlapDetector INSTANCE = new FlapDetector();
+
+    private final Set<String> flapping = ConcurrentHashMap.newKeySet();
+
+    FlapDetector() {
+    }
+
+    public static FlapDetector get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Updates the flapping state of the job of {@code build}, whose result is already set.
+     *
+     * @param resultMask The results that trigger an incident, see {@link org.jenkinsci.plugins.pagerduty.history.ResultMask}
+     * @return Whether the job is flapping
+     */
+    public boolean update(Run<?, ?> build, int resultMask) {
+        PagerDutyGlobalConfiguration configuration = PagerDutyGlobalConfiguration.get();
+        String jobFullName = build.getParent().getFullName();
+        int window = configuration.getFlapWindow();
+        if (window < 2 || resultMask == 0) {
+            flapping.remove(jobFullName);
+            return false;
+        }
+        int transitions = BuildResultHistory.get().countTransitions(build, resultMask, window);
+        return update(jobFullName, transitions, configuration.getFlapStartTransitions(),
+                configuration.getFlapStopTransitions());
+    }
+
+    boolean update(String jobFullName, int transitions, int startTransitions, int stopTransitions) {
+        if (flapping.contains(jobFullName)) {
+            if (transitions > Math.min(stopTransitions, startTransitions - 1)) {
+                return true;
+            }
+            flapping.remove(jobFullName);
+            return false;
+        }
+        if (transitions >= startTransitions) {
+            flapping.add(jobFullName);
+            return true;
+        }
+        return false;
+    }
+
+    public boolean isFlapping(String jobFullName) {
+        return flapping.contains(jobFullName);
+    }
+
+    @Extension
+    public static final class ItemListenerImpl extends ItemListener {
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            if (INSTANCE.flapping.remove(oldFullName)) {
+                INSTANCE.flapping.add(newFullName);
+            }
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            INSTANCE.flapping.remove(item.getFullName());
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package org.jenkinsci.plugins.pagerduty;
+
+import hudson.Extension;
+import jenkins.model.GlobalConfiguration;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+import org.jenkinsci.plugins.pagerduty.transport.EventDispatcher;
+import org.jenkinsci.plugins.pagerduty.transport.PagerDutyTransport;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.StaplerRequest;
+
+/**
+ * Controller-wide settings for the PagerDuty plugin, shown under "Configure System".
+ */
+@Extension
+public class PagerDutyGlobalConfiguration extends GlobalConfiguration {
+
+    /**
+     * Used when Jenkins is not running (e.g. in unit tests) so callers always get defaults.
+     */
+    private static final PagerDutyGlobalConfiguration DEFAULTS = new PagerDutyGlobalConfiguration(false);
+
+    public static final String DEFAULT_EVENTS_API_URL = "https://events.pagerduty.com";
+
+    /**
+     * Base URL of the PagerDuty Events API, e.g. to go through a relay or to test against a stand-in.
+     */
+    private String eventsApiUrl = DEFAULT_EVENTS_API_URL;
+
+    /**
+     * Seconds to wait for a connection to PagerDuty, or for a free one in the pool.
+     */
+    private int connectTimeout = 10;
+
+    /**
+     * Seconds to wait for PagerDuty to send data once connected.
+     */
+    private int readTimeout = 30;
+
+    /**
+     * Seconds a single request may take overall before it is aborted; 0 for no limit beyond the other timeouts.
+     */
+    private int requestTimeout = 60;
+
+    /**
+     * Connections kept open to each PagerDuty host.
+     */
+    private int maxConnectionsPerRoute = PagerDutyTransport.DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+
+    /**
+     * Threads delivering events to PagerDuty.
+     */
+    private int dispatcherWorkers = EventDispatcher.DEFAULT_WORKERS;
+
+    /**
+     * Events held in memory waiting to be delivered.
+     */
+    private int queueCapacity = EventDispatcher.DEFAULT_QUEUE_CAPACITY;
+
+    /**
+     * Seconds to hold change events for one integration key before sending them as one; 0 disables coalescing.
+     */
+    private int changeEventCoalescingWindow;
+
+    /**
+     * Upper bound on the builds listed in a single coalesced change event.
+     */
+    private int maxCoalescedChangeEvents = 50;
+
+    /**
+     * Seconds during which an event identical to one already sent is dropped; 0 sends every event.
+     */
+    private int duplicateWindow;
+
+    /**
+     * Events per minute sent to a single routing or integration key; 0 disables the limit.
+     */
+    private int rateLimitPerMinute = 120;
+
+    /**
+     * Events that may be sent to a single key back to back before the rate limit applies.
+     */
+    private int rateLimitBurst = 20;
+
+    /**
+     * Recent builds in which result changes are counted to detect flapping jobs; 0 disables flap detection.
+     */
+    private int flapWindow;
+
+    /**
+     * Result changes within the window at which a job starts flapping.
+     */
+    private int flapStartTransitions = 4;
+
+    /**
+     * Result changes within the window at or below which a flapping job stops flapping.
+     */
+    private int flapStopTransitions = 1;
+
+    public PagerDutyGlobalConfiguration() {
+        load();
+    }
+
+    private PagerDutyGlobalConfiguration(boolean load) {
+        if (load) {
+            load();
+        }
+    }
+
+    /**
+     * @return The active configuration, or the defaults when Jenkins is not running
+     */
+    public static PagerDutyGlobalConfiguration get() {
+        if (Jenkins.getInstanceOrNull() == null) {
+            return DEFAULTS;
+        }
+        PagerDutyGlobalConfiguration configuration = GlobalConfiguration.all().get(PagerDutyGlobalConfiguration.class);
+        return configuration != null ? configuration : DEFAULTS;
+    }
+
+    @Override
+    public boolean configure(StaplerRequest req, JSONObject json) throws FormException {
+        req.bindJSON(this, json);
+        save();
+        PagerDutyTransport.reconfigure(this);
+        EventDispatcher.get().reconfigure(this);
+        return true;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "PagerDuty";
+    }
+
+    public String getEventsApiUrl() {
+        return eventsApiUrl;
+    }
+
+    @DataBoundSetter
+    public void setEventsApiUrl(String eventsApiUrl) {
+        String url = eventsApiUrl != null ? eventsApiUrl.trim() : "";
+        while (url.endsWith("/")) {
+            url = url.substring(0, url.length() - 1);
+        }
+        this.eventsApiUrl = url.isEmpty() ? DEFAULT_EVENTS_API_URL : url;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    @DataBoundSetter
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = Math.max(1, connectTimeout);
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    @DataBoundSetter
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = Math.max(1, readTimeout);
+    }
+
+    public int getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    @DataBoundSetter
+    public void setRequestTimeout(int requestTimeout) {
+        this.requestTimeout = Math.max(0, requestTimeout);
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    @DataBoundSetter
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = Math.max(1, maxConnectionsPerRoute);
+    }
+
+    public int getDispatcherWorkers() {
+        return dispatcherWorkers;
+    }
+
+    @DataBoundSetter
+    public void setDispatcherWorkers(int dispatcherWorkers) {
+        this.dispatcherWorkers = Math.max(1, dispatcherWorkers);
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    @DataBoundSetter
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    public int getChangeEventCoalescingWindow() {
+        return changeEventCoalescingWindow;
+    }
+
+    @DataBoundSetter
+    public void setChangeEventCoalescingWindow(int changeEventCoalescingWindow) {
+        this.changeEventCoalescingWindow = Math.max(0, changeEventCoalescingWindow);
+    }
+
+    public int getMaxCoalescedChangeEvents() {
+        return maxCoalescedChangeEvents;
+    }
+
+    @DataBoundSetter
+    public void setMaxCoalescedChangeEvents(int maxCoalescedChangeEvents) {
+        this.maxCoalescedChangeEvents = Math.max(1, maxCoalescedChangeEvents);
+    }
+
+    public int getDuplicateWindow() {
+        return duplicateWindow;
+    }
+
+    @DataBoundSetter
+    public void setDuplicateWindow(int duplicateWindow) {
+        this.duplicateWindow = Math.max(0, duplicateWindow);
+    }
+
+    public int getRateLimitPerMinute() {
+        return rateLimitPerMinute;
+    }
+
+    @DataBoundSetter
+    public void setRateLimitPerMinute(int rateLimitPerMinute) {
+        this.rateLimitPerMinute = Math.max(0, rateLimitPerMinute);
+    }
+
+    public int getRateLimitBurst() {
+        return rateLimitBurst;
+    }
+
+    @DataBoundSetter
+    public void setRateLimitBurst(int rateLimitBurst) {
+        this.rateLimitBurst = Math.max(1, rateLimitBurst);
+    }
+
+    public int getFlapWindow() {
+        return flapWindow;
+    }
+
+    @DataBoundSetter
+    public void setFlapWindow(int flapWindow) {
+        this.flapWindow = Math.max(0, flapWindow);
+    }
+
+    public int getFlapStartTransitions() {
+        return flapStartTransitions;
+    }
+
+    @DataBoundSetter
+    public void setFlapStartTransitions(int flapStartTransitions) {
+        this.flapStartTransitions = Math.max(1, flapStartTransitions);
+    }
+
+    public int getFlapStopTransitions() {
+        return flapStopTransitions;
+    }
+
+    @DataBoundSetter
+    public void setFlapStopTransitions(int flapStopTransitions) {
+        this.flapStopTransitions = Math.max(0, flapStopTransitions);
+    }
+}
@@ -0,0 +1,84 @@
+package org.jenkinsci.plugins.pagerduty;
+
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+
+import javax.annotation.CheckForNull;
+import java.util.List;
+
+/**
+ * Records an incident event sent by a build, saved with the build so later builds can find the
+ * dedup key without reading its console log.
+ */
+public class PagerDutyIncidentAction extends InvisibleAction {
+
+    public enum Status {
+        /**
+         * A trigger event was queued for delivery.
+         */
+        TRIGGERED,
+        /**
+         * A resolve event was queued for delivery.
+         */
+        RESOLVED,
+        /**
+         * PagerDuty rejected the event or it could not be delivered.
+         */
+        FAILED
+    }
+
+    private final String dedupKey;
+
+    private final String routingKey;
+
+    private volatile Status status;
+
+    private final long timestamp;
+
+    public PagerDutyIncidentAction(String dedupKey, String routingKey, Status status, long timestamp) {
+        this.dedupKey = dedupKey;
+        this.routingKey = routingKey;
+        this.status = status;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Finds the most recent incident a build triggered.
+     *
+     * @return The action, or {@code null} if the build did not trigger an incident
+     */
+    @CheckForNull
+    public static PagerDutyIncidentAction getTriggered(Run<?, ?> run) {
+        List<PagerDutyIncidentAction> actions = run.getActions(PagerDutyIncidentAction.class);
+        for (int i = actions.size() - 1; i >= 0; i--) {
+            PagerDutyIncidentAction action = actions.get(i);
+            if (action.getStatus() == Status.TRIGGERED && action.getDedupKey() != null) {
+                return action;
+            }
+        }
+        return null;
+    }
+
+    public String getDedupKey() {
+        return dedupKey;
+    }
+
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    /**
+     * @return When the event was queued, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
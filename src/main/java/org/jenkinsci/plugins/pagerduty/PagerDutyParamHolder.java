@@ -5,8 +5,8 @@ import hudson.FilePath;
 import hudson.model.AbstractBuild;
 import hudson.model.Run;
 import hudson.model.TaskListener;
+import org.jenkinsci.plugins.pagerduty.util.TokenTemplate;
 import org.jenkinsci.plugins.tokenmacro.MacroEvaluationException;
-import org.jenkinsci.plugins.tokenmacro.TokenMacro;
 import org.json.JSONObject;
 
 import java.io.IOException;
@@ -32,7 +32,9 @@ public class PagerDutyParamHolder {
     private boolean triggerOnUnstable;
     private boolean triggerOnAborted;
     private boolean triggerOnNotBuilt;
-
+    private int logExcerptLines;
+    private int logExcerptKb;
+    private boolean includeTestResults;
 
     public PagerDutyParamHolder(String routingKey, String dedupKey, String incidentSummary, JSONObject customDetails, String incidentSource, String incidentSeverity, String incidentComponent, String incidentGroup, String incidentClass, Integer numPreviousBuildsToProbe, boolean resolveOnBackToNormal, boolean triggerOnSuccess, boolean triggerOnFailure, boolean triggerOnUnstable, boolean triggerOnAborted, boolean triggerOnNotBuilt) {
         this.routingKey = routingKey;
@@ -85,6 +87,10 @@ public class PagerDutyParamHolder {
         this.customDetails = new JSONObject(customDetails);
     }
 
+    public void setCustomDetails(JSONObject customDetails) {
+        this.customDetails = customDetails;
+    }
+
     public String getIncidentSource() {
         return incidentSource;
     }
@@ -184,27 +190,54 @@ public class PagerDutyParamHolder {
         return triggerOnNotBuilt;
     }
 
+    public int getLogExcerptLines() {
+        return logExcerptLines;
+    }
+
+    public void setLogExcerptLines(Integer logExcerptLines) {
+        this.logExcerptLines = logExcerptLines != null ? Math.max(0, logExcerptLines) : 0;
+    }
+
+    public int getLogExcerptKb() {
+        return logExcerptKb;
+    }
+
+    public void setLogExcerptKb(Integer logExcerptKb) {
+        this.logExcerptKb = logExcerptKb != null ? Math.max(0, logExcerptKb) : 0;
+    }
+
+    /**
+     * @return Whether the end of the console log is sent with trigger events
+     */
+    public boolean isLogExcerptEnabled() {
+        return logExcerptLines > 0 || logExcerptKb > 0;
+    }
+
+    public boolean isIncludeTestResults() {
+        return includeTestResults;
+    }
+
+    public void setIncludeTestResults(boolean includeTestResults) {
+        this.includeTestResults = includeTestResults;
+    }
+
     public void tokenReplaceWorkflow(Run<?, ?> run, FilePath workspace, TaskListener listener) throws InterruptedException, MacroEvaluationException, IOException {
-        this.setRoutingKey(TokenMacro.expandAll(run, workspace, listener, this.routingKey));
-        this.setDedupKey(TokenMacro.expandAll(run, workspace, listener, this.dedupKey));
-        this.setIncidentSummary(TokenMacro.expandAll(run, workspace, listener, this.incidentSummary));
-        this.setCustomDetails(TokenMacro.expandAll(run, workspace, listener,  this.customDetails.toString()));
-        this.setIncidentSource(TokenMacro.expandAll(run, workspace, listener, this.incidentSource));
-        this.setIncidentSeverity(TokenMacro.expandAll(run, workspace, listener, this.incidentSeverity));
-        this.setIncidentComponent(TokenMacro.expandAll(run, workspace, listener, this.incidentComponent));
-        this.setIncidentGroup(TokenMacro.expandAll(run, workspace, listener, this.incidentGroup));
-        this.setIncidentClass(TokenMacro.expandAll(run, workspace, listener, this.incidentClass));
+        tokenReplace(TokenTemplate.Context.of(run, workspace, listener));
     }
 
     public void tokenReplace(AbstractBuild<?, ?> build, TaskListener listener) throws InterruptedException, MacroEvaluationException, IOException {
-        this.setRoutingKey(TokenMacro.expandAll(build, listener, this.routingKey));
-        this.setDedupKey(TokenMacro.expandAll(build, listener, this.dedupKey));
-        this.setIncidentSummary(TokenMacro.expandAll(build, listener, this.incidentSummary));
-        this.setCustomDetails(TokenMacro.expandAll(build, listener,  this.customDetails.toString()));
-        this.setIncidentSource(TokenMacro.expandAll(build, listener, this.incidentSource));
-        this.setIncidentSeverity(TokenMacro.expandAll(build, listener, this.incidentSeverity));
-        this.setIncidentComponent(TokenMacro.expandAll(build, listener, this.incidentComponent));
-        this.setIncidentGroup(TokenMacro.expandAll(build, listener, this.incidentGroup));
-        this.setIncidentClass(TokenMacro.expandAll(build, listener, this.incidentClass));
+        tokenReplace(TokenTemplate.Context.of(build, listener));
+    }
+
+    private void tokenReplace(TokenTemplate.Context context) throws InterruptedException, MacroEvaluationException, IOException {
+        this.setRoutingKey(TokenTemplate.expand(this.routingKey, context));
+        this.setDedupKey(TokenTemplate.expand(this.dedupKey, context));
+        this.setIncidentSummary(TokenTemplate.expand(this.incidentSummary, context));
+        this.customDetails = TokenTemplate.expand(this.customDetails, context);
+        this.setIncidentSource(TokenTemplate.expand(this.incidentSource, context));
+        this.setIncidentSeverity(TokenTemplate.expand(this.incidentSeverity, context));
+        this.setIncidentComponent(TokenTemplate.expand(this.incidentComponent, context));
+        this.setIncidentGroup(TokenTemplate.expand(this.incidentGroup, context));
+        this.setIncidentClass(TokenTemplate.expand(this.incidentClass, context));
     }
 }
@@ -11,13 +11,14 @@ import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Notifier;
 import hudson.tasks.Publisher;
 import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.pagerduty.history.OpenIncident;
+import org.jenkinsci.plugins.pagerduty.history.OpenIncidentIndex;
 import org.jenkinsci.plugins.pagerduty.util.PagerDutyUtils;
 import org.json.JSONObject;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 import java.io.IOException;
-import java.util.LinkedList;
-import java.util.List;
 
 /**
  * Created by alexander on 9/15/15.
@@ -34,12 +35,17 @@ public class PagerDutyTrigger extends Notifier {
     private String incidentGroup;
     private String incidentClass;
     private Integer numPreviousBuildsToProbe;
+    private Integer probeWindow;
+    private Integer logExcerptLines;
+    private Integer logExcerptKb;
+    private boolean includeTestResults;
     private boolean resolveOnBackToNormal;
     private boolean triggerOnSuccess;
     private boolean triggerOnFailure;
     private boolean triggerOnUnstable;
     private boolean triggerOnAborted;
     private boolean triggerOnNotBuilt;
+    private transient volatile TriggerPolicy triggerPolicy;
 
     @DataBoundConstructor
     public PagerDutyTrigger(String routingKey, String dedupKey, String incidentSummary, 
@@ -115,6 +121,43 @@ public class PagerDutyTrigger extends Notifier {
         return numPreviousBuildsToProbe;
     }
 
+    public Integer getProbeWindow() {
+        return probeWindow;
+    }
+
+    @DataBoundSetter
+    public void setProbeWindow(Integer probeWindow) {
+        this.probeWindow = (probeWindow != null && probeWindow > 0) ? probeWindow : null;
+        this.triggerPolicy = null;
+    }
+
+    public Integer getLogExcerptLines() {
+        return logExcerptLines;
+    }
+
+    @DataBoundSetter
+    public void setLogExcerptLines(Integer logExcerptLines) {
+        this.logExcerptLines = (logExcerptLines != null && logExcerptLines > 0) ? logExcerptLines : null;
+    }
+
+    public Integer getLogExcerptKb() {
+        return logExcerptKb;
+    }
+
+    @DataBoundSetter
+    public void setLogExcerptKb(Integer logExcerptKb) {
+        this.logExcerptKb = (logExcerptKb != null && logExcerptKb > 0) ? logExcerptKb : null;
+    }
+
+    public boolean isIncludeTestResults() {
+        return includeTestResults;
+    }
+
+    @DataBoundSetter
+    public void setIncludeTestResults(boolean includeTestResults) {
+        this.includeTestResults = includeTestResults;
+    }
+
     public boolean isTriggerOnSuccess() {
         return triggerOnSuccess;
     }
@@ -146,41 +189,33 @@ public class PagerDutyTrigger extends Notifier {
         return j.getDescriptorByType(DescriptorImpl.class);
     }
 
-    private LinkedList<Result> generateResultProbe() {
-        LinkedList<Result> res = new LinkedList<Result>();
-        if (triggerOnSuccess)
-            res.add(Result.SUCCESS);
-        if (triggerOnFailure)
-            res.add(Result.FAILURE);
-        if (triggerOnUnstable)
-            res.add(Result.UNSTABLE);
-        if (triggerOnAborted)
-            res.add(Result.ABORTED);
-        if (triggerOnNotBuilt)
-            res.add(Result.NOT_BUILT);
-        return res;
+    TriggerPolicy getTriggerPolicy() {
+        TriggerPolicy policy = triggerPolicy;
+        if (policy == null) {
+            int threshold = numPreviousBuildsToProbe != null ? numPreviousBuildsToProbe : 1;
+            policy = TriggerPolicy.compile(triggerOnSuccess, triggerOnFailure, triggerOnUnstable, triggerOnAborted,
+                    triggerOnNotBuilt, threshold, probeWindow != null ? probeWindow : threshold);
+            triggerPolicy = policy;
+        }
+        return policy;
     }
 
     /*
-     * method to verify X previous builds finished with the desired result
+     * method to verify X previous builds (or X of the last Y builds) finished with the desired result
      */
-    private PDConstants.ValidationResult validWithPreviousResults(AbstractBuild<?, ?> build, List<Result> desiredResultList, int depth) {
-        int i = 0;
+    private PDConstants.ValidationResult validWithPreviousResults(AbstractBuild<?, ?> build, TriggerPolicy policy) {
         if (this.resolveOnBackToNormal && build != null && Result.SUCCESS.equals(build.getResult())) {
-            AbstractBuild<?, ?> previousBuild = build.getPreviousBuild();
-            if (previousBuild != null && !Result.SUCCESS.equals(previousBuild.getResult()))
-                return PDConstants.ValidationResult.DO_RESOLVE;
-        } else {
-            while (i < depth && build != null) {
-                if (!desiredResultList.contains(build.getResult())) {
-                    break;
-                }
-                i++;
-                build = build.getPreviousBuild();
-            }
-            if (i == depth) {
-                return PDConstants.ValidationResult.DO_TRIGGER;
+            OpenIncidentIndex index = OpenIncidentIndex.get();
+            if (index.isReady()) {
+                if (index.get(build.getParent().getFullName()) != null)
+                    return PDConstants.ValidationResult.DO_RESOLVE;
+            } else {
+                AbstractBuild<?, ?> previousBuild = build.getPreviousBuild();
+                if (previousBuild != null && !Result.SUCCESS.equals(previousBuild.getResult()))
+                    return PDConstants.ValidationResult.DO_RESOLVE;
             }
+        } else if (build != null && policy.shouldTrigger(build)) {
+            return PDConstants.ValidationResult.DO_TRIGGER;
         }
         return PDConstants.ValidationResult.DO_NOTHING;
     }
@@ -203,25 +238,46 @@ public class PagerDutyTrigger extends Notifier {
      */
     @Override
     public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
-        LinkedList<Result> resultProbe = generateResultProbe();
-
         boolean res = true;
-        PDConstants.ValidationResult validationResult = validWithPreviousResults(build, resultProbe, this.numPreviousBuildsToProbe);
+        TriggerPolicy policy = getTriggerPolicy();
+        PDConstants.ValidationResult validationResult = validWithPreviousResults(build, policy);
+        boolean flapping = FlapDetector.get().update(build, policy.getResultMask());
 
         PagerDutyParamHolder pdparams = new PagerDutyParamHolder(routingKey, dedupKey, incidentSummary, new JSONObject(customDetails),
                 incidentSource, incidentSeverity, incidentComponent, incidentGroup, incidentClass, numPreviousBuildsToProbe, resolveOnBackToNormal, triggerOnSuccess, triggerOnFailure, triggerOnUnstable, triggerOnAborted, triggerOnNotBuilt);
+        pdparams.setLogExcerptLines(logExcerptLines);
+        pdparams.setLogExcerptKb(logExcerptKb);
+        pdparams.setIncludeTestResults(includeTestResults);
 
         if (validationResult != PDConstants.ValidationResult.DO_NOTHING) {
+            OpenIncident openIncident = OpenIncidentIndex.get().get(build.getParent().getFullName());
+            if (flapping && openIncident != null) {
+                if (validationResult == PDConstants.ValidationResult.DO_RESOLVE) {
+                    listener.getLogger().println("Job is flapping, keeping PagerDuty incident open");
+                    return true;
+                }
+                // an event with the same dedup key updates the open incident
+                listener.getLogger().println("Job is flapping, updating open PagerDuty incident");
+                pdparams.setDedupKey(openIncident.getDedupKey());
+            }
             if (validationResult == PDConstants.ValidationResult.DO_TRIGGER) {
                 listener.getLogger().println("Triggering PagerDuty Notification");
                 res = PagerDutyUtils.triggerPagerDuty(pdparams, build, null, listener);
                 this.dedupKey = pdparams.getDedupKey();
             } else if (validationResult == PDConstants.ValidationResult.DO_RESOLVE) {
+                if ((this.dedupKey == null || this.dedupKey.isEmpty()) && openIncident != null) {
+                    this.dedupKey = openIncident.getDedupKey();
+                }
                 if (this.dedupKey == null || this.dedupKey.isEmpty()) {
                     AbstractBuild<?, ?> prevBuild = build.getPreviousFailedBuild();
                     if (prevBuild != null) {
-                        String log = prevBuild.getLog();
-                        this.dedupKey = PagerDutyUtils.extractDedupKey(log);
+                        PagerDutyIncidentAction incident = PagerDutyIncidentAction.getTriggered(prevBuild);
+                        if (incident != null) {
+                            this.dedupKey = incident.getDedupKey();
+                        } else {
+                            // builds from before the dedup key was recorded on the build
+                            this.dedupKey = PagerDutyUtils.extractDedupKey(prevBuild);
+                        }
                     }
                 }
                 pdparams.setDedupKey(this.dedupKey);
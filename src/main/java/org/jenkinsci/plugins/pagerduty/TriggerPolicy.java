@@ -0,0 +1,78 @@
+package org.jenkinsci.plugins.pagerduty;
+
+import hudson.model.Result;
+import hudson.model.Run;
+import org.jenkinsci.plugins.pagerduty.history.BuildResultHistory;
+import org.jenkinsci.plugins.pagerduty.history.ResultMask;
+
+/**
+ * Decides whether a build should trigger an incident, compiled once from a job's trigger settings.
+ *
+ * Either {@code threshold} consecutive builds must end with one of the selected results, or, when a
+ * larger {@code window} is set, at least {@code threshold} of the last {@code window} builds must,
+ * with the current build being one of them. Results are kept as a bitmask and builds are looked up in
+ * the {@link BuildResultHistory}, so evaluating a policy does not allocate.
+ */
+public final class TriggerPolicy {
+
+    private final int resultMask;
+
+    private final int threshold;
+
+    private final int window;
+
+    private TriggerPolicy(int resultMask, int threshold, int window) {
+        this.resultMask = resultMask;
+        this.threshold = Math.max(1, threshold);
+        this.window = Math.max(this.threshold, window);
+    }
+
+    /**
+     * @param resultMask The results that count towards triggering, see {@link ResultMask}
+     * @param threshold  How many builds must have one of those results
+     * @param window     How many recent builds to look at, or at most {@code threshold} to require consecutive builds
+     */
+    public static TriggerPolicy compile(int resultMask, int threshold, int window) {
+        return new TriggerPolicy(resultMask, threshold, window);
+    }
+
+    public static TriggerPolicy compile(boolean onSuccess, boolean onFailure, boolean onUnstable, boolean onAborted,
+                                        boolean onNotBuilt, int threshold, int window) {
+        int mask = (onSuccess ? ResultMask.bit(Result.SUCCESS) : 0)
+                | (onFailure ? ResultMask.bit(Result.FAILURE) : 0)
+                | (onUnstable ? ResultMask.bit(Result.UNSTABLE) : 0)
+                | (onAborted ? ResultMask.bit(Result.ABORTED) : 0)
+                | (onNotBuilt ? ResultMask.bit(Result.NOT_BUILT) : 0);
+        return compile(mask, threshold, window);
+    }
+
+    public boolean isConsecutive() {
+        return window == threshold;
+    }
+
+    /**
+     * @return Whether {@code build}, whose result is already set, should trigger an incident
+     */
+    public boolean shouldTrigger(Run<?, ?> build) {
+        if (resultMask == 0 || !ResultMask.contains(resultMask, build.getResult())) {
+            return false;
+        }
+        BuildResultHistory history = BuildResultHistory.get();
+        if (isConsecutive()) {
+            return history.countConsecutive(build, resultMask, threshold) >= threshold;
+        }
+        return history.countInWindow(build, resultMask, window) >= threshold;
+    }
+
+    public int getResultMask() {
+        return resultMask;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+}
@@ -19,9 +19,11 @@ import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import java.io.IOException;
 import java.lang.InterruptedException;
+import org.jenkinsci.plugins.pagerduty.util.OutcomeLog;
 import org.jenkinsci.plugins.tokenmacro.MacroEvaluationException;
 import org.jenkinsci.plugins.tokenmacro.TokenMacro;
 
+import java.util.Collections;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -80,7 +82,8 @@ public class ChangeEventBuilder extends Builder  {
 		} catch (IOException | MacroEvaluationException | InterruptedException e) {
 			listener.getLogger().println("Error replacing customDetails tokens.");
 		}
-		new ChangeEventSender().send(expandedIntegrationKey, expandedSummaryText, expandedCustomDetails, build, listener);
+		OutcomeLog.track(build, Collections.singletonList(new ChangeEventSender().send(expandedIntegrationKey, expandedSummaryText,
+				expandedCustomDetails, build, OutcomeLog.of(build, listener))));
 		return true;
     }
 
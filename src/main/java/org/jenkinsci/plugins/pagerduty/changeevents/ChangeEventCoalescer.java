@@ -0,0 +1,167 @@
+package org.jenkinsci.plugins.pagerduty.changeevents;
+
+import jenkins.util.Timer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Merges bursts of change events for the same integration key into a single change event.
+ *
+ * The first event for a key opens a window; every event for that key arriving before the window closes joins
+ * it, and all of their callers are completed with the response to the one merged event. Only the first
+ * {@code maxEvents} events of a window are kept, later ones are just counted, so memory per key stays bounded.
+ */
+final class ChangeEventCoalescer {
+
+    private static final Logger LOGGER = Logger.getLogger(ChangeEventCoalescer.class.getName());
+
+    private static final ChangeEventCoalescer INSTANCE = new ChangeEventCoalescer(ChangeEventsAPI::enqueue, Timer::get);
+
+    private final BiFunction<String, byte[], CompletableFuture<ChangeEventsAPI.Response>> sender;
+
+    private final Supplier<ScheduledExecutorService> scheduler;
+
+    private final ConcurrentHashMap<String, Burst> bursts = new ConcurrentHashMap<>();
+
+    ChangeEventCoalescer(BiFunction<String, byte[], CompletableFuture<ChangeEventsAPI.Response>> sender,
+                         Supplier<ScheduledExecutorService> scheduler) {
+        this.sender = sender;
+        this.scheduler = scheduler;
+    }
+
+    static ChangeEventCoalescer get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Adds an event to the open window for its integration key, opening one if needed.
+     *
+     * @param event         The change event to send
+     * @param windowSeconds How long the window stays open once opened
+     * @param maxEvents     The maximum number of events listed in the merged event
+     * @return A future completed with PagerDuty's response to the merged event
+     */
+    CompletableFuture<ChangeEventsAPI.Response> submit(ChangeEvent event, int windowSeconds, int maxEvents) {
+        String integrationKey = event.getIntegrationKey();
+        while (true) {
+            Burst burst = bursts.computeIfAbsent(integrationKey, key -> new Burst(maxEvents));
+            synchronized (burst) {
+                if (burst.closed) {
+                    // flushed while we were looking it up, so it is no longer in the map
+                    continue;
+                }
+                burst.add(event);
+                if (burst.total == 1) {
+                    scheduler.get().schedule(() -> flush(integrationKey, burst), windowSeconds, TimeUnit.SECONDS);
+                }
+                return burst.future;
+            }
+        }
+    }
+
+    /**
+     * Closes every open window now rather than waiting for it to expire.
+     */
+    void flushAll() {
+        bursts.forEach(this::flush);
+    }
+
+    int getOpenWindows() {
+        return bursts.size();
+    }
+
+    private void flush(String integrationKey, Burst burst) {
+        synchronized (burst) {
+            if (burst.closed) {
+                return;
+            }
+            burst.closed = true;
+            bursts.remove(integrationKey, burst);
+        }
+
+        try {
+            byte[] json = ChangeEventSender.encode(burst.total == 1 ? burst.latest : merge(burst));
+            sender.apply(integrationKey, json).whenComplete((response, error) -> {
+                if (error != null) {
+                    burst.future.completeExceptionally(error);
+                } else {
+                    burst.future.complete(response);
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to send coalesced PagerDuty change event", e);
+            burst.future.completeExceptionally(e);
+        }
+    }
+
+    static ChangeEvent merge(Burst burst) {
+        ChangeEvent latest = burst.latest;
+        ChangeEvent.Builder builder = new ChangeEvent.Builder()
+                .setIntegrationKey(latest.getIntegrationKey())
+                .setSummary(latest.getSummary() + " (+" + (burst.total - 1) + " more)")
+                .setSource(latest.getSource())
+                .setTimestamp(latest.getTimestamp());
+
+        List<Map<String, Object>> builds = new ArrayList<>(burst.events.size());
+        for (ChangeEvent event : burst.events) {
+            Map<String, Object> build = new LinkedHashMap<>();
+            build.put("summary", event.getSummary());
+            build.put("details", event.getCustomDetails());
+            if (!event.getLinks().isEmpty()) {
+                build.put("link", event.getLinks().get(0).getHref());
+            }
+            builds.add(build);
+            event.getLinks().forEach(builder::addLink);
+        }
+
+        Map<String, Object> customDetails = new HashMap<>();
+        customDetails.put("coalesced_events", burst.total);
+        customDetails.put("builds", builds);
+        if (burst.total > burst.events.size()) {
+            customDetails.put("omitted_events", burst.total - burst.events.size());
+        }
+        return builder.setCustomDetails(customDetails).build();
+    }
+
+    /**
+     * The events collected for one integration key during a single window.
+     */
+    static final class Burst {
+        private final int maxEvents;
+
+        private final List<ChangeEvent> events = new ArrayList<>();
+
+        private final CompletableFuture<ChangeEventsAPI.Response> future = new CompletableFuture<>();
+
+        private ChangeEvent latest;
+
+        private int total;
+
+        private boolean closed;
+
+        Burst(int maxEvents) {
+            this.maxEvents = maxEvents;
+        }
+
+        void add(ChangeEvent event) {
+            if (events.size() < maxEvents) {
+                events.add(event);
+            }
+            latest = event;
+            total++;
+        }
+    }
+}
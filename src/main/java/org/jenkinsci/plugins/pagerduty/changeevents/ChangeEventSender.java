@@ -7,11 +7,13 @@ import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import org.jenkinsci.plugins.displayurlapi.DisplayURLProvider;
+import org.jenkinsci.plugins.pagerduty.PagerDutyGlobalConfiguration;
+import org.jenkinsci.plugins.pagerduty.transport.EventEncoder;
 
 import java.io.IOException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Orchestrates generating a Change Event from the details of a build and sends
@@ -21,11 +23,18 @@ public class ChangeEventSender {
 
     private static final ObjectMapper objectMapper = new ObjectMapper();
     
-    public final void send(String integrationKey,
-                           String summaryText,
-                           String customDetails,
-                           Run<?, ?> build,
-                           TaskListener listener) {
+    /**
+     * Builds a change event for the given build and queues it for delivery.
+     *
+     * The outcome is written to the build log once PagerDuty has responded.
+     *
+     * @return A future completed with PagerDuty's response
+     */
+    public final CompletableFuture<ChangeEventsAPI.Response> send(String integrationKey,
+                                                                  String summaryText,
+                                                                  String customDetails,
+                                                                  Run<?, ?> build,
+                                                                  TaskListener listener) {
         try {
         	
         	ChangeEvent changeEvent = getChangeEvent(integrationKey,build);
@@ -47,16 +56,37 @@ public class ChangeEventSender {
                 }
             }
 
-            String json = convertToJSON(changeEvent);
+            byte[] json = encode(changeEvent);
 
             listener.getLogger().println("Generated payload for PagerDuty Change Events");
-            listener.getLogger().println(json);
+            listener.getLogger().write(json, 0, json.length);
+            listener.getLogger().println();
+
+            PagerDutyGlobalConfiguration configuration = PagerDutyGlobalConfiguration.get();
+            CompletableFuture<ChangeEventsAPI.Response> pending;
+            if (configuration.getChangeEventCoalescingWindow() > 0) {
+                listener.getLogger().println("Holding the change event for up to " + configuration.getChangeEventCoalescingWindow()
+                        + "s to coalesce it with other changes to the same service");
+                pending = ChangeEventCoalescer.get().submit(changeEvent,
+                        configuration.getChangeEventCoalescingWindow(), configuration.getMaxCoalescedChangeEvents());
+            } else {
+                pending = ChangeEventsAPI.enqueue(integrationKey, json);
+            }
 
-            ChangeEventsAPI.Response response = ChangeEventsAPI.send(json);
-            listener.getLogger().println("PagerDuty Change Events responded with " + response.getCode());
-            listener.getLogger().println(response.getBody());
+            return pending.whenComplete((response, error) -> {
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    cause.printStackTrace(listener.error("Failed to send PagerDuty Change Event: " + cause.getMessage()));
+                } else {
+                    listener.getLogger().println("PagerDuty Change Events responded with " + response.getCode());
+                    listener.getLogger().println(response.getBody());
+                }
+            });
         } catch (IOException e) {
             e.printStackTrace(listener.error(e.getMessage()));
+            CompletableFuture<ChangeEventsAPI.Response> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
         }
     }
 
@@ -112,34 +142,28 @@ public class ChangeEventSender {
         return new ChangeEvent.Link(DisplayURLProvider.get().getRunURL(build), "View on Jenkins");
     }
 
-    private String convertToJSON(ChangeEvent changeEvent) throws JsonProcessingException {
-        TimeZone timeZone = TimeZone.getTimeZone("UTC");
-        DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.S'Z'");
-        dateFormat.setTimeZone(timeZone);
-
-        HashMap<String, Object> payload = new HashMap<>();
-        payload.put("summary", changeEvent.getSummary());
-        payload.put("source", changeEvent.getSource());
-        payload.put("timestamp", dateFormat.format(changeEvent.getTimestamp()));
-        payload.put("custom_details", changeEvent.getCustomDetails());
-
-        List<HashMap<String, String>> links = new ArrayList<>();
-        changeEvent.getLinks().forEach((link) -> {
-            HashMap<String, String> linkMap = new HashMap<>();
-            linkMap.put("href", link.getHref());
-
-            if (link.getText() != null) {
-                linkMap.put("text", link.getText());
+    /**
+     * Encodes a change event as the JSON body of a request to the Change Events API.
+     */
+    static byte[] encode(ChangeEvent changeEvent) throws IOException {
+        return EventEncoder.encode(json -> {
+            json.writeStartObject();
+            json.writeStringField("routing_key", changeEvent.getIntegrationKey());
+            json.writeObjectFieldStart("payload");
+            json.writeStringField("summary", changeEvent.getSummary());
+            json.writeStringField("source", changeEvent.getSource());
+            EventEncoder.writeTimestampField(json, "timestamp", changeEvent.getTimestamp());
+            json.writeObjectField("custom_details", changeEvent.getCustomDetails());
+            json.writeEndObject();
+            json.writeArrayFieldStart("links");
+            for (ChangeEvent.Link link : changeEvent.getLinks()) {
+                json.writeStartObject();
+                json.writeStringField("href", link.getHref());
+                EventEncoder.writeOptionalField(json, "text", link.getText());
+                json.writeEndObject();
             }
-
-            links.add(linkMap);
+            json.writeEndArray();
+            json.writeEndObject();
         });
-
-        HashMap<String, Object> event = new HashMap<>();
-        event.put("routing_key", changeEvent.getIntegrationKey());
-        event.put("payload", payload);
-        event.put("links", links);
-
-        return objectMapper.writer().writeValueAsString(event);
     }
 }
@@ -13,6 +13,7 @@ import hudson.tasks.Publisher;
 import hudson.util.FormValidation;
 import jenkins.model.Jenkins;
 import jenkins.tasks.SimpleBuildStep;
+import org.jenkinsci.plugins.pagerduty.util.OutcomeLog;
 import org.jenkinsci.plugins.tokenmacro.MacroEvaluationException;
 import org.jenkinsci.plugins.tokenmacro.TokenMacro;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -20,6 +21,7 @@ import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -108,7 +110,8 @@ public class ChangeEvents extends Notifier implements SimpleBuildStep {
             } catch (IOException | MacroEvaluationException | InterruptedException e) {
                 listener.getLogger().println("Error replacing customDetails tokens.");
             }
-            new ChangeEventSender().send(expandedIntegrationKey, expandedSummaryText, expandedCustomDetails, build, listener);
+            OutcomeLog.track(build, Collections.singletonList(new ChangeEventSender().send(expandedIntegrationKey, expandedSummaryText,
+                    expandedCustomDetails, build, OutcomeLog.of(build, listener))));
 
         }
 
@@ -1,42 +1,69 @@
 package org.jenkinsci.plugins.pagerduty.changeevents;
 
-import java.io.BufferedReader;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.jenkinsci.plugins.pagerduty.PagerDutyGlobalConfiguration;
+import org.jenkinsci.plugins.pagerduty.transport.DuplicateFilter;
+import org.jenkinsci.plugins.pagerduty.transport.Endpoint;
+import org.jenkinsci.plugins.pagerduty.transport.OutboundEvent;
+
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Reader;
-import java.io.Writer;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.stream.Collectors;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Simple wrapper around calling the PagerDuty Change Events API.
  */
 public class ChangeEventsAPI {
-    public static Response send(String json) throws IOException {
-        URL url = new URL("https://events.pagerduty.com/v2/change/enqueue");
-
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("POST");
-        connection.setDoOutput(true);
-        connection.setRequestProperty("content-type", "application/json");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
 
-        try (OutputStream out = connection.getOutputStream(); Writer writer = new OutputStreamWriter(out, "UTF-8")) {
-            writer.write(json);
-        }
+    /**
+     * Queues a change event for delivery without waiting for PagerDuty.
+     *
+     * @param integrationKey The integration key the event is addressed to
+     * @param json           The encoded change event
+     * @return A future completed with PagerDuty's response
+     */
+    public static CompletableFuture<Response> enqueue(String integrationKey, String json) {
+        return enqueue(integrationKey, json.getBytes(StandardCharsets.UTF_8));
+    }
 
-        String body;
+    /**
+     * Queues an already encoded change event for delivery without waiting for PagerDuty, unless an identical one
+     * was sent within the configured {@linkplain PagerDutyGlobalConfiguration#getDuplicateWindow() window}.
+     *
+     * @param integrationKey The integration key the event is addressed to
+     * @param json           The UTF-8 encoded change event
+     * @return A future completed with PagerDuty's response, or with its response to the identical event
+     */
+    public static CompletableFuture<Response> enqueue(String integrationKey, byte[] json) {
+        int window = PagerDutyGlobalConfiguration.get().getDuplicateWindow();
+        return DuplicateFilter.get().submit(new OutboundEvent(Endpoint.CHANGE_EVENTS, integrationKey, json), null,
+                window > 0 ? content(json) : json, window)
+                .thenApply(response -> new Response(response.getCode(), response.getBody()));
+    }
 
-        try (InputStream responseStream = connection.getInputStream();
-                Reader reader = new InputStreamReader(responseStream, "UTF-8");
-                BufferedReader bufferedReader = new BufferedReader(reader)) {
-            body = bufferedReader.lines().collect(Collectors.joining(System.lineSeparator()));
+    /**
+     * @return What makes two change events identical: the event without its timestamp and the build duration,
+     *         which differ whenever the same change is sent again
+     */
+    static byte[] content(byte[] json) {
+        try {
+            JsonNode event = MAPPER.readTree(json);
+            JsonNode payload = event.path("payload");
+            if (payload instanceof ObjectNode) {
+                ((ObjectNode) payload).remove("timestamp");
+                JsonNode customDetails = payload.path("custom_details");
+                if (customDetails instanceof ObjectNode) {
+                    ((ObjectNode) customDetails).remove("duration");
+                }
+            }
+            return MAPPER.writeValueAsBytes(event);
+        } catch (IOException e) {
+            // not ours to reject, PagerDuty will
+            return json;
         }
-
-        return new Response(connection.getResponseCode(), body);
     }
 
     public static final class Response {
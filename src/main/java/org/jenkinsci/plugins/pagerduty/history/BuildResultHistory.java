@@ -0,0 +1,341 @@
+package org.jenkinsci.plugins.pagerduty.history;
+
+import hudson.Extension;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remembers the results of each job's recent builds so trigger conditions can be checked without
+ * loading earlier builds from disk.
+ *
+ * A {@link RunListener} records every build as it starts, completes or is deleted into a per-job
+ * {@link ResultRing}. The rings are saved to {@code JENKINS_HOME/pagerduty/build-results.bin} at one
+ * byte per build, periodically and at shutdown. Only a snapshot written at a clean shutdown is trusted
+ * on the next start, since after a crash builds may have completed without being saved. Whenever the
+ * rings do not cover a build, e.g. for builds older than the ring, callers fall back to the build itself.
+ */
+public final class BuildResultHistory {
+
+    private static final Logger LOGGER = Logger.getLogger(BuildResultHistory.class.getName());
+
+    private static final int CAPACITY = Integer.getInteger(BuildResultHistory.class.getName() + ".capacity", 64);
+
+    private static final long SAVE_INTERVAL_SECONDS = 30;
+
+    private static final int MAGIC = 0x50444252;
+
+    private static final byte VERSION = 1;
+
+    private static final int CONSECUTIVE = 0;
+
+    private static final int MATCHES = 1;
+
+    private static final int TRANSITIONS = 2;
+
+    private static final BuildResultHistory INSTANCE = new BuildResultHistory(CAPACITY);
+
+    private final int capacity;
+
+    private final ConcurrentHashMap<String, ResultRing> rings = new ConcurrentHashMap<>();
+
+    private volatile boolean dirty;
+
+    private volatile File file;
+
+    BuildResultHistory(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public static BuildResultHistory get() {
+        return INSTANCE;
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void open() {
+        File file = new File(Jenkins.get().getRootDir(), "pagerduty/build-results.bin");
+        try {
+            INSTANCE.load(file);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not read the PagerDuty build result history " + file, e);
+        }
+        Timer.get().scheduleWithFixedDelay(() -> {
+            if (INSTANCE.dirty) {
+                INSTANCE.saveQuietly(false);
+            }
+        }, SAVE_INTERVAL_SECONDS, SAVE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Terminator
+    public static void close() {
+        INSTANCE.saveQuietly(true);
+    }
+
+    /**
+     * Counts how many builds in a row, starting with {@code build} and going back, ended with a
+     * result in {@code resultMask}.
+     *
+     * @param build      The build to start from; its own result is taken from the build as it may still be running
+     * @param resultMask The results to count, see {@link ResultMask}
+     * @param depth      The most builds to count
+     * @return The number of consecutive builds, at most {@code depth}
+     */
+    public int countConsecutive(Run<?, ?> build, int resultMask, int depth) {
+        return scan(build, resultMask, depth, CONSECUTIVE);
+    }
+
+    /**
+     * Counts how many of the last {@code window} builds, {@code build} included, ended with a result in
+     * {@code resultMask}.
+     */
+    public int countInWindow(Run<?, ?> build, int resultMask, int window) {
+        return scan(build, resultMask, window, MATCHES);
+    }
+
+    /**
+     * Counts how often the last {@code window} builds, {@code build} included, changed between having a
+     * result in {@code resultMask} and not having one.
+     */
+    public int countTransitions(Run<?, ?> build, int resultMask, int window) {
+        return scan(build, resultMask, window, TRANSITIONS);
+    }
+
+    /**
+     * Visits up to {@code builds} builds from {@code build} backwards, reading the ring while it covers them
+     * and the builds themselves after that, and aggregates whether each had a result in {@code resultMask}.
+     */
+    private int scan(Run<?, ?> build, int resultMask, int builds, int mode) {
+        Job<?, ?> job = build.getParent();
+        ResultRing ring = job != null ? rings.get(job.getFullName()) : null;
+        int number = build.getNumber();
+        Run<?, ?> walked = null;
+        int total = 0;
+        boolean previous = false;
+        for (int seen = 0; seen < builds; seen++) {
+            boolean matches;
+            if (seen == 0) {
+                matches = ResultMask.contains(resultMask, build.getResult());
+            } else if (walked == null) {
+                byte state = ResultRing.ABSENT;
+                while (state == ResultRing.ABSENT && --number > 0) {
+                    state = ring != null ? ring.state(number) : ResultRing.UNKNOWN;
+                }
+                if (number <= 0) {
+                    break;
+                }
+                if (state == ResultRing.UNKNOWN) {
+                    walked = job != null ? job.getNearestOldBuild(number) : null;
+                    if (walked == null) {
+                        break;
+                    }
+                    matches = ResultMask.contains(resultMask, walked.getResult());
+                } else {
+                    matches = ResultRing.matches(state, resultMask);
+                }
+            } else {
+                walked = walked.getPreviousBuild();
+                if (walked == null) {
+                    break;
+                }
+                matches = ResultMask.contains(resultMask, walked.getResult());
+            }
+
+            if (mode == CONSECUTIVE) {
+                if (!matches) {
+                    break;
+                }
+                total++;
+            } else if (mode == MATCHES) {
+                total += matches ? 1 : 0;
+            } else if (seen > 0 && matches != previous) {
+                total++;
+            }
+            previous = matches;
+        }
+        return total;
+    }
+
+    void started(String jobFullName, int number) {
+        ring(jobFullName).started(number);
+        dirty = true;
+    }
+
+    void completed(String jobFullName, int number, Result result) {
+        ResultRing ring = rings.get(jobFullName);
+        if (ring != null) {
+            ring.completed(number, result);
+            dirty = true;
+        }
+    }
+
+    void deleted(String jobFullName, int number) {
+        ResultRing ring = rings.get(jobFullName);
+        if (ring != null) {
+            ring.deleted(number);
+            dirty = true;
+        }
+    }
+
+    void renamed(String oldFullName, String newFullName) {
+        for (String name : new ArrayList<>(rings.keySet())) {
+            String renamed = name.equals(oldFullName) ? newFullName
+                    : name.startsWith(oldFullName + "/") ? newFullName + name.substring(oldFullName.length()) : null;
+            if (renamed != null) {
+                ResultRing ring = rings.remove(name);
+                if (ring != null) {
+                    rings.put(renamed, ring);
+                }
+            }
+        }
+        dirty = true;
+    }
+
+    void removed(String fullName) {
+        rings.keySet().removeIf(name -> name.equals(fullName) || name.startsWith(fullName + "/"));
+        dirty = true;
+    }
+
+    ResultRing getRing(String jobFullName) {
+        return rings.get(jobFullName);
+    }
+
+    private ResultRing ring(String jobFullName) {
+        return rings.computeIfAbsent(jobFullName, name -> new ResultRing(capacity));
+    }
+
+    /**
+     * Reads the rings saved at the last shutdown and marks the file as no longer current.
+     */
+    void load(File file) throws IOException {
+        this.file = file;
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw new IOException("Unrecognized format");
+            }
+            if (!in.readBoolean()) {
+                LOGGER.log(Level.INFO, "Ignoring PagerDuty build result history from before an unclean shutdown");
+                return;
+            }
+            while (in.readBoolean()) {
+                ResultRing ring = ring(in.readUTF());
+                int coveredFrom = in.readInt();
+                int from = in.readInt();
+                int to = in.readInt();
+                for (int number = from; number <= to; number++) {
+                    ring.restore(coveredFrom, number, in.readByte());
+                }
+            }
+        } finally {
+            // whatever happens from here on is not in the file until the next save
+            save(false);
+        }
+    }
+
+    private void saveQuietly(boolean clean) {
+        try {
+            save(clean);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save the PagerDuty build result history to " + file, e);
+        }
+    }
+
+    synchronized void save(boolean clean) throws IOException {
+        File file = this.file;
+        if (file == null) {
+            return;
+        }
+        dirty = false;
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeBoolean(clean);
+            for (Map.Entry<String, ResultRing> entry : rings.entrySet()) {
+                entry.getValue().write(new ResultRing.Sink() {
+                    @Override
+                    public void range(int coveredFrom, int from, int to) throws IOException {
+                        out.writeBoolean(true);
+                        out.writeUTF(entry.getKey());
+                        out.writeInt(coveredFrom);
+                        out.writeInt(from);
+                        out.writeInt(to);
+                    }
+
+                    @Override
+                    public void state(byte state) throws IOException {
+                        out.writeByte(state);
+                    }
+                });
+            }
+            out.writeBoolean(false);
+            out.flush();
+            stream.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Extension
+    public static final class RunListenerImpl extends RunListener<Run<?, ?>> {
+        @Override
+        public void onStarted(Run<?, ?> run, TaskListener listener) {
+            INSTANCE.started(run.getParent().getFullName(), run.getNumber());
+        }
+
+        @Override
+        public void onCompleted(Run<?, ?> run, TaskListener listener) {
+            INSTANCE.completed(run.getParent().getFullName(), run.getNumber(), run.getResult());
+        }
+
+        @Override
+        public void onDeleted(Run<?, ?> run) {
+            INSTANCE.deleted(run.getParent().getFullName(), run.getNumber());
+        }
+    }
+
+    @Extension
+    public static final class ItemListenerImpl extends ItemListener {
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            INSTANCE.renamed(oldFullName, newFullName);
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            INSTANCE.removed(item.getFullName());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.jenkinsci.plugins.pagerduty.history;
+
+/**
+ * An incident a job triggered and has not resolved yet.
+ */
+public final class OpenIncident {
+
+    private final String dedupKey;
+
+    private final String routingKey;
+
+    private final int buildNumber;
+
+    private final long openedAt;
+
+    public OpenIncident(String dedupKey, String routingKey, int buildNumber, long openedAt) {
+        this.dedupKey = dedupKey;
+        this.routingKey = routingKey;
+        this.buildNumber = buildNumber;
+        this.openedAt = openedAt;
+    }
+
+    public String getDedupKey() {
+        return dedupKey;
+    }
+
+    /**
+     * @return The routing key the incident was triggered with, or {@code null} if it is not known
+     */
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    /**
+     * @return The number of the build that triggered the incident
+     */
+    public int getBuildNumber() {
+        return buildNumber;
+    }
+
+    /**
+     * @return When the incident was triggered, in milliseconds since the epoch
+     */
+    public long getOpenedAt() {
+        return openedAt;
+    }
+}
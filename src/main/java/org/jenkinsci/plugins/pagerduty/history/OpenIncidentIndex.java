@@ -0,0 +1,440 @@
+package org.jenkinsci.plugins.pagerduty.history;
+
+import hudson.Extension;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.listeners.ItemListener;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import org.jenkinsci.plugins.pagerduty.PagerDutyIncidentAction;
+import org.jenkinsci.plugins.pagerduty.util.DedupKeyScanner;
+
+import javax.annotation.CheckForNull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Controller-wide index of the incident each job currently has open, so deciding whether to resolve
+ * never has to load earlier builds.
+ *
+ * Lookups are lock-free reads of a {@link ConcurrentHashMap}. Every change is also appended to a journal
+ * in {@code JENKINS_HOME/pagerduty/open-incidents.journal}, which is compacted into a snapshot once it
+ * holds mostly stale records. The first time the index is opened (e.g. after upgrading the plugin) there
+ * is no journal yet, and it is rebuilt from recent build history in the background; until that finishes
+ * {@link #isReady()} is false and callers fall back to looking at build history themselves.
+ */
+public final class OpenIncidentIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(OpenIncidentIndex.class.getName());
+
+    /**
+     * How many builds of each job are looked at when rebuilding the index.
+     */
+    private static final int REBUILD_DEPTH = Integer.getInteger(OpenIncidentIndex.class.getName() + ".rebuildDepth", 100);
+
+    private static final int COMPACT_THRESHOLD = 1000;
+
+    private static final byte OPENED = 'O';
+
+    private static final byte CLOSED = 'C';
+
+    private static final OpenIncidentIndex INSTANCE = new OpenIncidentIndex();
+
+    private final ConcurrentHashMap<String, OpenIncident> incidents = new ConcurrentHashMap<>();
+
+    /**
+     * Jobs changed while a rebuild runs, whose entries the rebuild must not overwrite.
+     */
+    private final Set<String> touched = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean ready;
+
+    private volatile boolean rebuilding;
+
+    /**
+     * Guarded by {@code this}, like every write to the journal.
+     */
+    private File journalFile;
+
+    private DataOutputStream journal;
+
+    private int journalRecords;
+
+    OpenIncidentIndex() {
+    }
+
+    public static OpenIncidentIndex get() {
+        return INSTANCE;
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void open() {
+        File file = new File(Jenkins.get().getRootDir(), "pagerduty/open-incidents.journal");
+        try {
+            if (INSTANCE.load(file)) {
+                return;
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not read the PagerDuty open incident index " + file + ", rebuilding it", e);
+        }
+        INSTANCE.rebuilding = true;
+        Timer.get().submit(() -> INSTANCE.rebuild(Jenkins.get().getAllItems(Job.class)));
+    }
+
+    @Terminator
+    public static void close() {
+        synchronized (INSTANCE) {
+            INSTANCE.closeJournal();
+        }
+    }
+
+    /**
+     * Whether the index reflects every job, so a missing entry means the job has no open incident.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return The incident the job has open, or {@code null} if it has none
+     */
+    @CheckForNull
+    public OpenIncident get(String jobFullName) {
+        return incidents.get(jobFullName);
+    }
+
+    /**
+     * @return Every open incident by job full name
+     */
+    public Map<String, OpenIncident> getOpenIncidents() {
+        return Collections.unmodifiableMap(incidents);
+    }
+
+    public void opened(String jobFullName, OpenIncident incident) {
+        synchronized (this) {
+            markTouched(jobFullName);
+            incidents.put(jobFullName, incident);
+            append(OPENED, jobFullName, incident);
+        }
+    }
+
+    /**
+     * Records that the job's incident was resolved.
+     *
+     * @param dedupKey Only close the open incident if it has this dedup key, or any if {@code null}
+     * @return The incident that was closed, or {@code null} if it was not open
+     */
+    @CheckForNull
+    public OpenIncident closed(String jobFullName, @CheckForNull String dedupKey) {
+        synchronized (this) {
+            OpenIncident incident = incidents.get(jobFullName);
+            if (incident == null || (dedupKey != null && !dedupKey.equals(incident.getDedupKey()))) {
+                return null;
+            }
+            markTouched(jobFullName);
+            incidents.remove(jobFullName);
+            append(CLOSED, jobFullName, null);
+            return incident;
+        }
+    }
+
+    /**
+     * Moves the entries of an item, and of everything inside it, to its new name.
+     */
+    void renamed(String oldFullName, String newFullName) {
+        synchronized (this) {
+            for (Map.Entry<String, OpenIncident> entry : new ArrayList<>(incidents.entrySet())) {
+                String name = entry.getKey();
+                String renamed = name.equals(oldFullName) ? newFullName
+                        : name.startsWith(oldFullName + "/") ? newFullName + name.substring(oldFullName.length()) : null;
+                if (renamed != null) {
+                    closed(name, null);
+                    opened(renamed, entry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the entries of an item and of everything inside it.
+     */
+    void deleted(String fullName) {
+        synchronized (this) {
+            for (String name : new ArrayList<>(incidents.keySet())) {
+                if (name.equals(fullName) || name.startsWith(fullName + "/")) {
+                    closed(name, null);
+                }
+            }
+        }
+    }
+
+    private void markTouched(String jobFullName) {
+        if (rebuilding) {
+            touched.add(jobFullName);
+        }
+    }
+
+    /**
+     * Reads the journal, truncating a record left incomplete by a crash.
+     *
+     * @return Whether there was a journal to read
+     */
+    synchronized boolean load(File file) throws IOException {
+        closeJournal();
+        journalFile = file;
+        incidents.clear();
+        journalRecords = 0;
+        if (!file.isFile()) {
+            openJournal();
+            return false;
+        }
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int length;
+                byte[] record;
+                try {
+                    length = in.readInt();
+                    if (length < 0 || valid + 4 + length > file.length()) {
+                        break;
+                    }
+                    record = new byte[length];
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    break;
+                }
+                apply(new DataInputStream(new ByteArrayInputStream(record)));
+                valid += 4 + length;
+                journalRecords++;
+            }
+        }
+        if (valid < file.length()) {
+            LOGGER.log(Level.WARNING, "Truncating incomplete record at offset {0} of {1}", new Object[] {valid, file});
+            try (RandomAccessFile truncate = new RandomAccessFile(file, "rw")) {
+                truncate.setLength(valid);
+            }
+        }
+        openJournal();
+        ready = true;
+        return true;
+    }
+
+    private void apply(DataInputStream in) throws IOException {
+        byte op = in.readByte();
+        String jobFullName = in.readUTF();
+        if (op == OPENED) {
+            String dedupKey = in.readUTF();
+            String routingKey = in.readBoolean() ? in.readUTF() : null;
+            incidents.put(jobFullName, new OpenIncident(dedupKey, routingKey, in.readInt(), in.readLong()));
+        } else {
+            incidents.remove(jobFullName);
+        }
+    }
+
+    /**
+     * Reconstructs the index from the most recent builds of each job and writes it out as a fresh journal.
+     */
+    void rebuild(Iterable<? extends Job> jobs) {
+        rebuilding = true;
+        try {
+            int found = 0;
+            for (Job<?, ?> job : jobs) {
+                OpenIncident incident = findOpenIncident(job);
+                if (incident != null && !touched.contains(job.getFullName())) {
+                    incidents.putIfAbsent(job.getFullName(), incident);
+                    found++;
+                }
+            }
+            synchronized (this) {
+                compact();
+            }
+            LOGGER.log(Level.INFO, "Rebuilt the PagerDuty open incident index, {0} open incidents found", found);
+        } catch (RuntimeException | IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to rebuild the PagerDuty open incident index", e);
+        } finally {
+            rebuilding = false;
+            touched.clear();
+            ready = true;
+        }
+    }
+
+    /**
+     * Walks back from the last build to the most recent one that triggered or resolved an incident.
+     * Builds from before incidents were recorded on the build are judged by their result and log.
+     */
+    @CheckForNull
+    static OpenIncident findOpenIncident(Job<?, ?> job) {
+        Run<?, ?> run = job.getLastBuild();
+        for (int depth = 0; run != null && depth < REBUILD_DEPTH; depth++, run = run.getPreviousBuild()) {
+            if (run.isBuilding()) {
+                continue;
+            }
+            List<PagerDutyIncidentAction> actions = run.getActions(PagerDutyIncidentAction.class);
+            for (int i = actions.size() - 1; i >= 0; i--) {
+                PagerDutyIncidentAction action = actions.get(i);
+                if (action.getStatus() == PagerDutyIncidentAction.Status.TRIGGERED) {
+                    return new OpenIncident(action.getDedupKey(), action.getRoutingKey(), run.getNumber(), action.getTimestamp());
+                }
+                if (action.getStatus() == PagerDutyIncidentAction.Status.RESOLVED) {
+                    return null;
+                }
+            }
+            if (actions.isEmpty()) {
+                if (Result.SUCCESS.equals(run.getResult())) {
+                    return null;
+                }
+                String dedupKey = scanLog(run);
+                if (dedupKey != null) {
+                    return new OpenIncident(dedupKey, null, run.getNumber(), run.getTimeInMillis());
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String scanLog(Run<?, ?> run) {
+        try {
+            return DedupKeyScanner.findLast(run.getLogFile());
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to read the log of " + run, e);
+            return null;
+        }
+    }
+
+    private void append(byte op, String jobFullName, OpenIncident incident) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            write(journal, op, jobFullName, incident);
+            journal.flush();
+            if (++journalRecords > COMPACT_THRESHOLD && journalRecords > 4 * incidents.size()) {
+                compact();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write to the PagerDuty open incident index " + journalFile, e);
+        }
+    }
+
+    private static void write(DataOutputStream out, byte op, String jobFullName, OpenIncident incident) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeByte(op);
+        record.writeUTF(jobFullName);
+        if (incident != null) {
+            record.writeUTF(incident.getDedupKey());
+            record.writeBoolean(incident.getRoutingKey() != null);
+            if (incident.getRoutingKey() != null) {
+                record.writeUTF(incident.getRoutingKey());
+            }
+            record.writeInt(incident.getBuildNumber());
+            record.writeLong(incident.getOpenedAt());
+        }
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    /**
+     * Replaces the journal with one holding only the open incidents. If that fails, the journal is kept as it
+     * is and appended to as before.
+     */
+    private void compact() throws IOException {
+        if (journalFile == null) {
+            return;
+        }
+        closeJournal();
+        File temp = new File(journalFile.getPath() + ".tmp");
+        int records = 0;
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                DataOutputStream snapshot = new DataOutputStream(new BufferedOutputStream(out));
+                for (Map.Entry<String, OpenIncident> entry : incidents.entrySet()) {
+                    write(snapshot, OPENED, entry.getKey(), entry.getValue());
+                    records++;
+                }
+                snapshot.flush();
+                out.getFD().sync();
+            }
+            Files.move(temp.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(temp.toPath());
+            } catch (IOException x) {
+                e.addSuppressed(x);
+            }
+            if (!journalFile.isFile()) {
+                // nothing to fall back to; rebuilt again on the next start
+                throw e;
+            }
+            LOGGER.log(Level.WARNING, "Failed to compact the PagerDuty open incident index " + journalFile
+                    + ", appending to it as it is", e);
+            // try again after as many records as before
+            journalRecords = 0;
+            openJournal();
+            return;
+        }
+        journalRecords = records;
+        openJournal();
+    }
+
+    private void openJournal() throws IOException {
+        File directory = journalFile.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        journal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, true)));
+    }
+
+    private void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to close " + journalFile, e);
+        }
+        journal = null;
+    }
+
+    /**
+     * Keeps the index in step with jobs and folders being renamed, moved or deleted.
+     */
+    @Extension
+    public static final class ItemListenerImpl extends ItemListener {
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            INSTANCE.renamed(oldFullName, newFullName);
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            INSTANCE.deleted(item.getFullName());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.jenkinsci.plugins.pagerduty.history;
+
+import hudson.model.Result;
+
+/**
+ * Sets of build results as bitmasks, one bit per completed {@link Result}.
+ */
+public final class ResultMask {
+
+    private static final Result[] RESULTS = {Result.SUCCESS, Result.UNSTABLE, Result.FAILURE, Result.NOT_BUILT, Result.ABORTED};
+
+    private ResultMask() {
+    }
+
+    /**
+     * @return The position of the result's bit, or -1 for {@code null} (a build still running)
+     */
+    static int index(Result result) {
+        for (int i = 0; i < RESULTS.length; i++) {
+            if (RESULTS[i] == result) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static Result result(int index) {
+        return index >= 0 && index < RESULTS.length ? RESULTS[index] : null;
+    }
+
+    public static int of(Result... results) {
+        int mask = 0;
+        for (Result result : results) {
+            mask |= bit(result);
+        }
+        return mask;
+    }
+
+    public static int bit(Result result) {
+        int index = index(result);
+        return index >= 0 ? 1 << index : 0;
+    }
+
+    public static boolean contains(int mask, Result result) {
+        return (mask & bit(result)) != 0;
+    }
+}
@@ -0,0 +1,130 @@
+package org.jenkinsci.plugins.pagerduty.history;
+
+import hudson.model.Result;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The results of a job's most recent builds, in a fixed-size ring indexed by build number.
+ *
+ * Slot {@code number % capacity} holds the state of build {@code number} as long as that number is
+ * within the last {@code capacity} builds. The ring only claims to know about builds from the first
+ * one it saw start onwards, since every later build is then seen starting, completing or being deleted.
+ */
+final class ResultRing {
+
+    /**
+     * The ring cannot tell, the caller has to look at the build itself.
+     */
+    static final byte UNKNOWN = -1;
+
+    static final byte RUNNING = -2;
+
+    /**
+     * There is no build with that number, e.g. because it was deleted.
+     */
+    static final byte ABSENT = -3;
+
+    private final int[] numbers;
+
+    private final byte[] states;
+
+    private int coveredFrom = Integer.MAX_VALUE;
+
+    private int highest;
+
+    ResultRing(int capacity) {
+        numbers = new int[Math.max(1, capacity)];
+        states = new byte[numbers.length];
+        Arrays.fill(numbers, -1);
+    }
+
+    static byte encode(Result result) {
+        int index = ResultMask.index(result);
+        return index >= 0 ? (byte) index : RUNNING;
+    }
+
+    /**
+     * @return The result a state stands for, or {@code null} for the special states
+     */
+    static Result decode(byte state) {
+        return ResultMask.result(state);
+    }
+
+    /**
+     * @return Whether the state is a completed build whose result is in {@code resultMask}
+     */
+    static boolean matches(byte state, int resultMask) {
+        return state >= 0 && (resultMask & (1 << state)) != 0;
+    }
+
+    int capacity() {
+        return numbers.length;
+    }
+
+    synchronized void started(int number) {
+        if (coveredFrom == Integer.MAX_VALUE) {
+            coveredFrom = number;
+        }
+        put(number, RUNNING);
+    }
+
+    synchronized void completed(int number, Result result) {
+        put(number, encode(result));
+    }
+
+    synchronized void deleted(int number) {
+        put(number, ABSENT);
+    }
+
+    /**
+     * Restores state saved by {@link #write}, valid from {@code coveredFrom} onwards.
+     */
+    synchronized void restore(int coveredFrom, int number, byte state) {
+        this.coveredFrom = Math.min(this.coveredFrom, coveredFrom);
+        put(number, state);
+    }
+
+    private void put(int number, byte state) {
+        if (number < coveredFrom || number <= highest - numbers.length) {
+            return;
+        }
+        int slot = number % numbers.length;
+        numbers[slot] = number;
+        states[slot] = state;
+        highest = Math.max(highest, number);
+    }
+
+    /**
+     * @return The result ordinal of the build, or one of {@link #UNKNOWN}, {@link #RUNNING} and {@link #ABSENT}
+     */
+    synchronized byte state(int number) {
+        if (number < coveredFrom || number <= highest - numbers.length) {
+            return UNKNOWN;
+        }
+        int slot = number % numbers.length;
+        return numbers[slot] == number ? states[slot] : ABSENT;
+    }
+
+    /**
+     * Hands the known range to {@code sink}, one state per build number in ascending order.
+     */
+    synchronized void write(Sink sink) throws IOException {
+        if (coveredFrom == Integer.MAX_VALUE) {
+            return;
+        }
+        int from = Math.max(coveredFrom, highest - numbers.length + 1);
+        sink.range(coveredFrom, from, highest);
+        for (int number = from; number <= highest; number++) {
+            int slot = number % numbers.length;
+            sink.state(numbers[slot] == number ? states[slot] : ABSENT);
+        }
+    }
+
+    interface Sink {
+        void range(int coveredFrom, int from, int to) throws IOException;
+
+        void state(byte state) throws IOException;
+    }
+}
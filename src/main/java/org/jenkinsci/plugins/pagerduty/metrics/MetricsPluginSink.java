@@ -0,0 +1,33 @@
+package org.jenkinsci.plugins.pagerduty.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import jenkins.metrics.api.Metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Publishes PagerDuty metrics to the registry of the Metrics plugin. Only loaded when that plugin is
+ * installed, as it is an optional dependency.
+ */
+final class MetricsPluginSink implements PagerDutyMetrics.Sink {
+
+    private final MetricRegistry registry = Metrics.metricRegistry();
+
+    @Override
+    public void counter(String name, long delta) {
+        registry.counter(name).inc(delta);
+    }
+
+    @Override
+    public void latency(String name, long nanos) {
+        registry.timer(name).update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void gauge(String name, LongSupplier value) {
+        registry.remove(name);
+        registry.register(name, (Gauge<Long>) value::getAsLong);
+    }
+}
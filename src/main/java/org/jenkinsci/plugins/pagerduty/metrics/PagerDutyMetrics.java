@@ -0,0 +1,167 @@
+package org.jenkinsci.plugins.pagerduty.metrics;
+
+import hudson.PluginWrapper;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import jenkins.model.Jenkins;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Plugin-wide counters, latency histograms and gauges for the calls made to PagerDuty.
+ *
+ * Metrics are always kept here; when the Metrics plugin is installed they are also published to its
+ * registry through a {@link Sink}, and so show up in its servlet and reporters.
+ *
+ * Routing keys never appear in metric names: they are labelled with the first 12 hex digits of their SHA-256
+ * hash, and only the first {@code maxRoutingKeys} keys seen are; later ones are counted under {@code other}.
+ */
+public final class PagerDutyMetrics {
+
+    private static final Logger LOGGER = Logger.getLogger(PagerDutyMetrics.class.getName());
+
+    public static final String PREFIX = "pagerduty.";
+
+    private static final int MAX_ROUTING_KEYS = Integer.getInteger(PagerDutyMetrics.class.getName() + ".maxRoutingKeys", 100);
+
+    private static final PagerDutyMetrics INSTANCE = new PagerDutyMetrics();
+
+    private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, String> routingKeyLabels = new ConcurrentHashMap<>();
+
+    private volatile Sink sink;
+
+    PagerDutyMetrics() {
+    }
+
+    public static PagerDutyMetrics get() {
+        return INSTANCE;
+    }
+
+    @Initializer(after = InitMilestone.PLUGINS_STARTED)
+    public static void publish() {
+        PluginWrapper plugin = Jenkins.get().getPluginManager().getPlugin("metrics");
+        if (plugin == null || !plugin.isActive()) {
+            return;
+        }
+        try {
+            INSTANCE.setSink(new MetricsPluginSink());
+        } catch (LinkageError e) {
+            LOGGER.log(Level.WARNING, "Could not publish PagerDuty metrics to the Metrics plugin", e);
+        }
+    }
+
+    /**
+     * Receives every update, e.g. to forward it to another metrics library.
+     */
+    public interface Sink {
+        void counter(String name, long delta);
+
+        void latency(String name, long nanos);
+
+        void gauge(String name, LongSupplier value);
+    }
+
+    synchronized void setSink(Sink sink) {
+        this.sink = sink;
+        if (sink != null) {
+            for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+                sink.counter(counter.getKey(), counter.getValue().sum());
+            }
+            for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+                sink.gauge(gauge.getKey(), gauge.getValue());
+            }
+        }
+    }
+
+    public void increment(String name) {
+        counters.computeIfAbsent(PREFIX + name, key -> new LongAdder()).increment();
+        Sink sink = this.sink;
+        if (sink != null) {
+            sink.counter(PREFIX + name, 1);
+        }
+    }
+
+    public void recordLatency(String name, long nanos) {
+        histograms.computeIfAbsent(PREFIX + name, key -> new LatencyHistogram()).record(nanos);
+        Sink sink = this.sink;
+        if (sink != null) {
+            sink.latency(PREFIX + name, nanos);
+        }
+    }
+
+    public synchronized void registerGauge(String name, LongSupplier value) {
+        gauges.put(PREFIX + name, value);
+        Sink sink = this.sink;
+        if (sink != null) {
+            sink.gauge(PREFIX + name, value);
+        }
+    }
+
+    /**
+     * @return A label for the routing key that is stable, short and reveals nothing of the key
+     */
+    public String routingKeyLabel(String routingKey) {
+        if (routingKey == null || routingKey.isEmpty()) {
+            return "none";
+        }
+        String label = routingKeyLabels.get(routingKey);
+        if (label == null) {
+            if (routingKeyLabels.size() >= MAX_ROUTING_KEYS) {
+                return "other";
+            }
+            label = hash(routingKey);
+            String existing = routingKeyLabels.putIfAbsent(routingKey, label);
+            label = existing != null ? existing : label;
+        }
+        return label;
+    }
+
+    private static String hash(String routingKey) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(routingKey.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM has SHA-256
+        }
+        StringBuilder hex = new StringBuilder(12);
+        for (int i = 0; i < 6; i++) {
+            hex.append(Character.forDigit((digest[i] >> 4) & 0xf, 16)).append(Character.forDigit(digest[i] & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    public long getCount(String name) {
+        LongAdder counter = counters.get(PREFIX + name);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    public LatencyHistogram getHistogram(String name) {
+        return histograms.get(PREFIX + name);
+    }
+
+    /**
+     * @return The current value of every counter and gauge, by full name
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        counters.forEach((name, counter) -> snapshot.put(name, counter.sum()));
+        gauges.forEach((name, gauge) -> snapshot.put(name, gauge.getAsLong()));
+        return Collections.unmodifiableMap(snapshot);
+    }
+}
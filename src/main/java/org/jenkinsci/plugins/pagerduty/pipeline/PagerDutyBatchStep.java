@@ -0,0 +1,323 @@
+package org.jenkinsci.plugins.pagerduty.pipeline;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import org.jenkinsci.plugins.pagerduty.PagerDutyParamHolder;
+import org.jenkinsci.plugins.pagerduty.changeevents.ChangeEventSender;
+import org.jenkinsci.plugins.pagerduty.changeevents.ChangeEventsAPI;
+import org.jenkinsci.plugins.pagerduty.util.IncidentEventsAPI;
+import org.jenkinsci.plugins.pagerduty.util.PagerDutyUtils;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
+import org.json.JSONObject;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+
+/**
+ * Workflow step to send several incident and change events at once.
+ *
+ * Each event is given as a map with a {@code type} of {@code trigger}, {@code resolve} or {@code change}
+ * and the same parameters as the {@code pagerduty} or {@code pagerdutyChangeEvent} step. All events are
+ * queued together and delivered concurrently; the step returns one result per event, in order, once
+ * PagerDuty has answered them all.
+ */
+public class PagerDutyBatchStep extends AbstractStepImpl {
+
+    @Nonnull
+    private final List<Map<String, Object>> events;
+
+    @DataBoundConstructor
+    public PagerDutyBatchStep(@Nonnull List<Map<String, Object>> events) {
+        this.events = events;
+    }
+
+    @Nonnull
+    public List<Map<String, Object>> getEvents() {
+        return events;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends AbstractStepDescriptorImpl {
+
+        public DescriptorImpl() {
+            super(PagerDutyBatchStepExecution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "pagerdutyBatch";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "PagerDuty batch of incident and change events";
+        }
+    }
+
+    public static class PagerDutyBatchStepExecution extends PendingEventExecution {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final ObjectMapper objectMapper = new ObjectMapper();
+
+        private static final Set<String> INCIDENT_PARAMETERS = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(
+                "type", "routingKey", "dedupKey", "incidentSummary", "customDetails", "incidentSource", "incidentSeverity",
+                "incidentComponent", "incidentGroup", "incidentClass", "logExcerptLines", "logExcerptKb", "includeTestResults")));
+
+        private static final Set<String> CHANGE_PARAMETERS = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(
+                "type", "integrationKey", "summaryText", "customDetails")));
+
+        @StepContextParameter
+        private transient Run<?, ?> run;
+
+        @Inject
+        transient PagerDutyBatchStep step;
+
+        @StepContextParameter
+        transient TaskListener listener;
+
+        /**
+         * One result per event, filled in as PagerDuty answers. Kept so the step can complete after a restart.
+         */
+        private final ArrayList<HashMap<String, Object>> results = new ArrayList<>();
+
+        @Override
+        protected CompletableFuture<?> send() throws Exception {
+            // check every event before any is sent
+            List<Event> events = new ArrayList<>();
+            for (Map<String, Object> event : step.events) {
+                events.add(validate(event));
+            }
+            FilePath workspace = getContext().get(FilePath.class);
+            List<CompletableFuture<?>> pending = new ArrayList<>();
+            for (Event event : events) {
+                String type = event.type;
+                HashMap<String, Object> result = new HashMap<>();
+                result.put("type", type);
+                result.put("status", "queued");
+                synchronized (results) {
+                    results.add(result);
+                }
+                if ("change".equals(type)) {
+                    pending.add(new ChangeEventSender().send(event.integrationKey, event.summaryText,
+                            event.changeEventDetails, run, listener)
+                            .whenComplete((response, error) -> completed(result, response, error)));
+                } else {
+                    PagerDutyParamHolder pdparams = event.pdparams;
+                    CompletableFuture<IncidentEventsAPI.Result> sent = "resolve".equals(type)
+                            ? PagerDutyUtils.resolveIncidentAsync(pdparams, run, listener)
+                            : PagerDutyUtils.triggerPagerDutyAsync(pdparams, run, workspace, listener);
+                    synchronized (results) {
+                        result.put("dedupKey", pdparams.getDedupKey());
+                    }
+                    pending.add(sent.whenComplete((outcome, error) -> completed(result, outcome, error)));
+                }
+            }
+            // the results are filled in by then, whatever the outcome of each event
+            return CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]))
+                    .handle((ignored, error) -> null);
+        }
+
+        @Override
+        protected Object getResult() {
+            ArrayList<HashMap<String, Object>> copy = new ArrayList<>();
+            synchronized (results) {
+                for (HashMap<String, Object> result : results) {
+                    copy.add(new HashMap<>(result));
+                }
+            }
+            return copy;
+        }
+
+        /**
+         * The outcome of events PagerDuty had not answered before the restart is not known; they are delivered
+         * from the spool.
+         */
+        @Override
+        protected Object getResumedResult() {
+            synchronized (results) {
+                for (HashMap<String, Object> result : results) {
+                    if ("queued".equals(result.get("status"))) {
+                        result.put("status", "unknown");
+                        result.put("successful", null);
+                        result.put("message", "Jenkins restarted before PagerDuty answered, the event is delivered from the spool");
+                    }
+                }
+            }
+            return getResult();
+        }
+
+        private void completed(HashMap<String, Object> result, Object outcome, Throwable error) {
+            synchronized (results) {
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    result.put("status", "error");
+                    result.put("successful", false);
+                    result.put("message", String.valueOf(cause.getMessage()));
+                } else if (outcome instanceof IncidentEventsAPI.Result) {
+                    IncidentEventsAPI.Result incident = (IncidentEventsAPI.Result) outcome;
+                    result.put("status", incident.getStatus());
+                    result.put("code", incident.getCode());
+                    result.put("successful", incident.isSuccessful());
+                    result.put("message", incident.getMessage());
+                    if (incident.getDedupKey() != null) {
+                        result.put("dedupKey", incident.getDedupKey());
+                    }
+                } else if (outcome instanceof ChangeEventsAPI.Response) {
+                    ChangeEventsAPI.Response response = (ChangeEventsAPI.Response) outcome;
+                    boolean successful = response.getCode() >= 200 && response.getCode() < 300;
+                    result.put("status", successful ? "success" : "rejected");
+                    result.put("code", response.getCode());
+                    result.put("successful", successful);
+                } else {
+                    // nothing was sent, e.g. a resolve without a dedup key
+                    result.put("status", "skipped");
+                    result.put("successful", false);
+                }
+            }
+        }
+
+        /**
+         * Reads every parameter of an event, so a batch with an invalid event fails before anything is sent.
+         *
+         * @throws IllegalArgumentException If the event cannot be sent as given
+         */
+        private static Event validate(Map<String, Object> event) {
+            String type = string(event, "type");
+            if (type == null) {
+                type = event.containsKey("integrationKey") && !event.containsKey("routingKey") ? "change" : "trigger";
+            }
+            type = type.toLowerCase(Locale.ENGLISH);
+            if (!"trigger".equals(type) && !"resolve".equals(type) && !"change".equals(type)) {
+                throw new IllegalArgumentException("Unknown PagerDuty event type '" + type + "', expected trigger, resolve or change");
+            }
+            // e.g. a misspelt routingKey, which would otherwise be ignored
+            Set<String> parameters = "change".equals(type) ? CHANGE_PARAMETERS : INCIDENT_PARAMETERS;
+            for (String parameter : event.keySet()) {
+                if (!parameters.contains(parameter)) {
+                    throw new IllegalArgumentException("Unknown parameter '" + parameter + "' for PagerDuty " + type
+                            + " events, expected " + String.join(", ", parameters));
+                }
+            }
+            String key = "change".equals(type) ? "integrationKey" : "routingKey";
+            if (string(event, key) == null) {
+                throw new IllegalArgumentException(key + " is required for PagerDuty " + type + " events");
+            }
+            if ("change".equals(type)) {
+                try {
+                    return new Event(type, null, string(event, "integrationKey"), string(event, "summaryText"),
+                            changeEventDetails(event));
+                } catch (JsonProcessingException e) {
+                    throw new IllegalArgumentException("customDetails of a PagerDuty change event cannot be sent as JSON: "
+                            + e.getOriginalMessage(), e);
+                }
+            }
+            return new Event(type, toParams(event), null, null, null);
+        }
+
+        private static PagerDutyParamHolder toParams(Map<String, Object> event) {
+            Object customDetails = event.get("customDetails");
+            PagerDutyParamHolder pdparams = new PagerDutyParamHolder(string(event, "routingKey"), string(event, "dedupKey"), string(event, "incidentSummary"),
+                    customDetails instanceof Map ? new JSONObject((Map<?, ?>) customDetails) : new JSONObject(),
+                    string(event, "incidentSource"), string(event, "incidentSeverity"), string(event, "incidentComponent"),
+                    string(event, "incidentGroup"), string(event, "incidentClass"),
+                    null, false, false, false, false, false, false);
+            pdparams.setLogExcerptLines(integer(event, "logExcerptLines"));
+            pdparams.setLogExcerptKb(integer(event, "logExcerptKb"));
+            pdparams.setIncludeTestResults(bool(event, "includeTestResults"));
+            return pdparams;
+        }
+
+        private static Integer integer(Map<String, Object> event, String key) {
+            Object value = event.get(key);
+            if (value instanceof Number) {
+                return ((Number) value).intValue();
+            }
+            try {
+                return value != null ? Integer.valueOf(value.toString().trim()) : null;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(key + " must be a whole number, not '" + value + "'");
+            }
+        }
+
+        private static boolean bool(Map<String, Object> event, String key) {
+            Object value = event.get(key);
+            if (value == null || value instanceof Boolean) {
+                return Boolean.TRUE.equals(value);
+            }
+            String text = value.toString().trim();
+            if (!"true".equalsIgnoreCase(text) && !"false".equalsIgnoreCase(text)) {
+                throw new IllegalArgumentException(key + " must be true or false, not '" + value + "'");
+            }
+            return Boolean.parseBoolean(text);
+        }
+
+        private static String changeEventDetails(Map<String, Object> event) throws JsonProcessingException {
+            Object customDetails = event.get("customDetails");
+            return customDetails instanceof Map ? objectMapper.writeValueAsString(customDetails) : string(event, "customDetails");
+        }
+
+        private static String string(Map<String, Object> event, String key) {
+            Object value = event.get(key);
+            if (value instanceof Collection) {
+                // e.g. several routing keys
+                List<String> values = new ArrayList<>();
+                for (Object item : (Collection<?>) value) {
+                    values.add(String.valueOf(item));
+                }
+                return values.isEmpty() ? null : String.join(",", values);
+            }
+            return value != null ? value.toString() : null;
+        }
+
+        /**
+         * An event read from the step's parameters.
+         */
+        private static final class Event {
+            private final String type;
+
+            /**
+             * For incident events.
+             */
+            private final PagerDutyParamHolder pdparams;
+
+            /**
+             * For change events.
+             */
+            private final String integrationKey;
+
+            private final String summaryText;
+
+            private final String changeEventDetails;
+
+            Event(String type, PagerDutyParamHolder pdparams, String integrationKey, String summaryText,
+                  String changeEventDetails) {
+                this.type = type;
+                this.pdparams = pdparams;
+                this.integrationKey = integrationKey;
+                this.summaryText = summaryText;
+                this.changeEventDetails = changeEventDetails;
+            }
+        }
+    }
+}
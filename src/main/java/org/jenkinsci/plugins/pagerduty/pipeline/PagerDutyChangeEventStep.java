@@ -3,10 +3,11 @@ package org.jenkinsci.plugins.pagerduty.pipeline;
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.jenkinsci.plugins.pagerduty.changeevents.ChangeEventSender;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
-import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousNonBlockingStepExecution;
 import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
@@ -69,8 +70,8 @@ public class PagerDutyChangeEventStep extends AbstractStepImpl {
     }
   }
 
-  public static class PagerDutyChangeEventExecution extends AbstractSynchronousNonBlockingStepExecution<Void> {
-    private static final long serialVersionUID = 1L;
+  public static class PagerDutyChangeEventExecution extends PendingEventExecution {
+    private static final long serialVersionUID = 2L;
 
     @StepContextParameter
     private transient Run<?, ?> build;
@@ -82,9 +83,12 @@ public class PagerDutyChangeEventStep extends AbstractStepImpl {
     transient TaskListener listener;
 
     @Override
-    protected Void run() {
-      new ChangeEventSender().send(step.integrationKey, step.summaryText, step.customDetails, build, listener);
-    	
+    protected CompletableFuture<?> send() {
+      return new ChangeEventSender().send(step.integrationKey, step.summaryText, step.customDetails, build, listener);
+    }
+
+    @Override
+    protected Object getResult() {
       return null;
     }
   }
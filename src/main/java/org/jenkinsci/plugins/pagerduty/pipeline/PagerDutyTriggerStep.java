@@ -2,7 +2,6 @@ package org.jenkinsci.plugins.pagerduty.pipeline;
 
 import hudson.Extension;
 import hudson.FilePath;
-import hudson.model.AbstractBuild;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import jenkins.model.Jenkins;
@@ -11,13 +10,15 @@ import org.jenkinsci.plugins.pagerduty.PagerDutyTrigger;
 import org.jenkinsci.plugins.pagerduty.util.PagerDutyUtils;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
-import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousNonBlockingStepExecution;
 import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
 import org.json.JSONObject;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
@@ -31,6 +32,7 @@ public class PagerDutyTriggerStep extends AbstractStepImpl {
 
     @Nonnull
     private final String routingKey;
+    private List<String> routingKeys;
     private boolean resolve;
     private String dedupKey;
     private String incidentSummary;
@@ -47,6 +49,9 @@ public class PagerDutyTriggerStep extends AbstractStepImpl {
     private boolean triggerOnUnstable;
     private boolean triggerOnAborted;
     private boolean triggerOnNotBuilt;
+    private Integer logExcerptLines;
+    private Integer logExcerptKb;
+    private boolean includeTestResults;
 
     @DataBoundConstructor
     public PagerDutyTriggerStep(@Nonnull String routingKey) {
@@ -58,6 +63,33 @@ public class PagerDutyTriggerStep extends AbstractStepImpl {
         return routingKey;
     }
 
+    public List<String> getRoutingKeys() {
+        return routingKeys;
+    }
+
+    /**
+     * Further routing keys to send the same event to, in addition to {@link #getRoutingKey()}.
+     */
+    @DataBoundSetter
+    public void setRoutingKeys(List<String> routingKeys) {
+        this.routingKeys = routingKeys;
+    }
+
+    /**
+     * @return All routing keys of the step, separated by commas
+     */
+    String getAllRoutingKeys() {
+        if (routingKeys == null || routingKeys.isEmpty()) {
+            return routingKey;
+        }
+        List<String> keys = new ArrayList<>();
+        if (routingKey != null && !routingKey.trim().isEmpty()) {
+            keys.add(routingKey);
+        }
+        keys.addAll(routingKeys);
+        return String.join(",", keys);
+    }
+
     @DataBoundSetter
     public void setResolve(boolean resolve) {
         this.resolve = resolve;
@@ -201,6 +233,33 @@ public class PagerDutyTriggerStep extends AbstractStepImpl {
         return triggerOnNotBuilt;
     }
 
+    public Integer getLogExcerptLines() {
+        return logExcerptLines;
+    }
+
+    @DataBoundSetter
+    public void setLogExcerptLines(Integer logExcerptLines) {
+        this.logExcerptLines = logExcerptLines;
+    }
+
+    public Integer getLogExcerptKb() {
+        return logExcerptKb;
+    }
+
+    @DataBoundSetter
+    public void setLogExcerptKb(Integer logExcerptKb) {
+        this.logExcerptKb = logExcerptKb;
+    }
+
+    public boolean isIncludeTestResults() {
+        return includeTestResults;
+    }
+
+    @DataBoundSetter
+    public void setIncludeTestResults(boolean includeTestResults) {
+        this.includeTestResults = includeTestResults;
+    }
+
     @Extension
     public static class DescriptorImpl extends AbstractStepDescriptorImpl {
 
@@ -219,9 +278,9 @@ public class PagerDutyTriggerStep extends AbstractStepImpl {
         }
     }
 
-    public static class PagerDutyTriggerStepExecution extends AbstractSynchronousNonBlockingStepExecution<String> {
+    public static class PagerDutyTriggerStepExecution extends PendingEventExecution {
 
-        private static final long serialVersionUID = 1L;
+        private static final long serialVersionUID = 2L;
 
         @StepContextParameter
         private transient Run<?, ?> run;
@@ -232,14 +291,19 @@ public class PagerDutyTriggerStep extends AbstractStepImpl {
         @StepContextParameter
         transient TaskListener listener;
 
+        /**
+         * The dedup key the step returns, kept so the step can complete after a restart.
+         */
+        private String dedupKey;
+
         @Override
-        protected String run() throws Exception {
+        protected CompletableFuture<?> send() throws Exception {
             Jenkins jenkins;
             try {
                 jenkins = Jenkins.getInstance();
             } catch (NullPointerException ne) {
                 listener.error("ERROR?!");
-                return null;
+                return CompletableFuture.completedFuture(null);
             }
             PagerDutyTrigger.DescriptorImpl pagerdutyDesc = jenkins.getDescriptorByType(PagerDutyTrigger.DescriptorImpl.class);
             boolean descExists = (pagerdutyDesc == null);
@@ -247,18 +311,28 @@ public class PagerDutyTriggerStep extends AbstractStepImpl {
                 listener.getLogger().println("Desc Exists");
             }
 
-            PagerDutyParamHolder pdparams = new PagerDutyParamHolder(step.routingKey, step.dedupKey, step.incidentSummary, new JSONObject(step.customDetails),
+            PagerDutyParamHolder pdparams = new PagerDutyParamHolder(step.getAllRoutingKeys(), step.dedupKey, step.incidentSummary, new JSONObject(step.customDetails),
             step.incidentSource, step.incidentSeverity, step.incidentComponent, step.incidentGroup, step.incidentClass,
             step.numPreviousBuildsToProbe, step.resolveOnBackToNormal, step.triggerOnSuccess, step.triggerOnFailure,
             step.triggerOnUnstable, step.triggerOnAborted, step.triggerOnNotBuilt);
+            pdparams.setLogExcerptLines(step.logExcerptLines);
+            pdparams.setLogExcerptKb(step.logExcerptKb);
+            pdparams.setIncludeTestResults(step.includeTestResults);
 
+            CompletableFuture<?> pending;
             if (step.resolve) {
-                PagerDutyUtils.resolveIncident(pdparams, this.getContext().get(AbstractBuild.class), listener);
+                pending = PagerDutyUtils.resolveIncidentAsync(pdparams, run, listener);
             } else {
-                PagerDutyUtils.triggerPagerDuty(pdparams, run, getContext().get(FilePath.class), listener);
+                pending = PagerDutyUtils.triggerPagerDutyAsync(pdparams, run, getContext().get(FilePath.class), listener);
             }
 
-            return pdparams.getDedupKey();
+            dedupKey = pdparams.getDedupKey();
+            return pending;
+        }
+
+        @Override
+        protected Object getResult() {
+            return dedupKey;
         }
     }
 }
@@ -0,0 +1,130 @@
+package org.jenkinsci.plugins.pagerduty.pipeline;
+
+import hudson.AbortException;
+import hudson.model.TaskListener;
+import jenkins.util.Timer;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a step that queues an event for PagerDuty and finishes once PagerDuty has answered.
+ *
+ * No thread is held while the event is on its way, and none of the CPS VM thread's time is spent on it:
+ * {@link #start()} hands {@link #send()} (token expansion, reading the build log, encoding) to the shared
+ * {@link Timer} pool, and the step is completed from the dispatcher once the outcome is known. As before, an event
+ * PagerDuty rejects or that cannot be delivered is reported in the build log but does not fail the step.
+ *
+ * If the controller restarts in the meantime, an event that was queued is delivered from the spool after the
+ * restart and the step completes as soon as it resumes, with {@link #getResumedResult()}. The step fails if the
+ * event had not been queued yet, as its {@link #queued} marker is saved only then: the step itself is not kept
+ * across a restart, so the event cannot be sent again.
+ */
+abstract class PendingEventExecution extends AbstractStepExecutionImpl {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = Logger.getLogger(PendingEventExecution.class.getName());
+
+    private transient volatile Future<?> task;
+
+    /**
+     * Whether the event is in the dispatcher's spool, so it is delivered even if the controller restarts.
+     * Saved with the program, unlike the rest of the state.
+     */
+    private volatile boolean queued;
+
+    /**
+     * Whether the step has been completed, so it is completed only once. Guarded by {@code this}.
+     */
+    private transient boolean finished;
+
+    /**
+     * Queues the event.
+     *
+     * @return A future completed once PagerDuty has answered
+     */
+    protected abstract CompletableFuture<?> send() throws Exception;
+
+    /**
+     * @return The value the step returns
+     */
+    protected abstract Object getResult();
+
+    /**
+     * @return The value the step returns when it resumed after a restart, before PagerDuty had answered
+     */
+    protected Object getResumedResult() {
+        return getResult();
+    }
+
+    @Override
+    public boolean start() throws Exception {
+        StepContext context = getContext();
+        task = Timer.get().submit(() -> {
+            try {
+                CompletableFuture<?> delivered = send();
+                queued = true;
+                context.saveState();
+                delivered.whenComplete((outcome, error) -> {
+                    if (finish()) {
+                        context.onSuccess(getResult());
+                    }
+                });
+            } catch (Throwable t) {
+                if (finish()) {
+                    context.onFailure(t);
+                }
+            }
+        });
+        return false;
+    }
+
+    @Override
+    public void stop(Throwable cause) throws Exception {
+        if (finish()) {
+            Future<?> task = this.task;
+            if (task != null) {
+                task.cancel(true);
+            }
+            getContext().onFailure(cause);
+        }
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        StepContext context = getContext();
+        if (!queued) {
+            if (finish()) {
+                context.onFailure(new AbortException(
+                        "Jenkins restarted before the PagerDuty event was queued, it may not have been sent"));
+            }
+            return;
+        }
+        try {
+            context.get(TaskListener.class).getLogger()
+                    .println("The PagerDuty event was queued before Jenkins restarted and will be delivered from the spool");
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Could not log to the build resuming a PagerDuty step", e);
+        }
+        if (finish()) {
+            context.onSuccess(getResumedResult());
+        }
+    }
+
+    /**
+     * @return Whether the caller should complete the step
+     */
+    private synchronized boolean finish() {
+        if (finished) {
+            return false;
+        }
+        finished = true;
+        return true;
+    }
+}
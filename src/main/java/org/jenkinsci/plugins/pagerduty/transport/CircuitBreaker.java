@@ -0,0 +1,222 @@
+package org.jenkinsci.plugins.pagerduty.transport;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stops sending to PagerDuty while it (or the proxy in front of it) is failing most requests.
+ *
+ * The outcomes of the last {@code windowSize} requests are kept; once at least {@code minimumRequests}
+ * have been seen and the share of failures reaches {@code failureRatePercent}, the circuit opens and
+ * requests are refused without touching the network for {@code openMillis}. After that the circuit is
+ * half open: a single request is let through as a probe, and closes the circuit if it succeeds or
+ * opens it again if it fails. Other requests wait while the probe is in flight.
+ *
+ * Each request gets a {@link Permit} naming the state it was let through in. Outcomes of requests let through
+ * before the state last changed, e.g. slow requests still in flight when the circuit opened, are ignored, so
+ * only the probe decides whether the circuit closes again.
+ *
+ * Only outages count as failures: network errors and server errors. Rejected events and throttling
+ * of a single routing key say nothing about whether PagerDuty is reachable.
+ */
+public final class CircuitBreaker {
+
+    private static final Logger LOGGER = Logger.getLogger(CircuitBreaker.class.getName());
+
+    private static final CircuitBreaker DEFAULT = new CircuitBreaker(
+            Integer.getInteger(CircuitBreaker.class.getName() + ".windowSize", 20),
+            Integer.getInteger(CircuitBreaker.class.getName() + ".minimumRequests", 10),
+            Integer.getInteger(CircuitBreaker.class.getName() + ".failureRatePercent", 50),
+            Long.getLong(CircuitBreaker.class.getName() + ".openMillis", TimeUnit.SECONDS.toMillis(30)));
+
+    /**
+     * How long requests wait while a probe is in flight.
+     */
+    private static final long PROBE_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final boolean[] outcomes;
+
+    private final int minimumRequests;
+
+    private final int failureRatePercent;
+
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+
+    /**
+     * Next slot of {@link #outcomes} to overwrite.
+     */
+    private int next;
+
+    private int recorded;
+
+    private int failures;
+
+    private long openUntil;
+
+    private boolean probing;
+
+    /**
+     * Incremented whenever {@link #state} changes.
+     */
+    private long generation;
+
+    public CircuitBreaker(int windowSize, int minimumRequests, int failureRatePercent, long openMillis) {
+        this.outcomes = new boolean[Math.max(1, windowSize)];
+        this.minimumRequests = Math.max(1, Math.min(minimumRequests, outcomes.length));
+        this.failureRatePercent = Math.max(1, Math.min(100, failureRatePercent));
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, openMillis));
+    }
+
+    public static CircuitBreaker get() {
+        return DEFAULT;
+    }
+
+    /**
+     * Asks to send a request.
+     *
+     * @param now The current {@link System#nanoTime()}
+     * @return A permit to pass to {@link #record} once the request completed, unless it was refused
+     */
+    public synchronized Permit tryAcquire(long now) {
+        switch (state) {
+            case CLOSED:
+                return new Permit(generation, false, 0);
+            case OPEN:
+                if (now - openUntil < 0) {
+                    return new Permit(generation, false, openUntil - now);
+                }
+                setState(State.HALF_OPEN);
+                LOGGER.log(Level.FINE, "Probing whether PagerDuty is reachable again");
+                // fall through
+            default:
+                if (probing) {
+                    return new Permit(generation, false, Math.min(openNanos, PROBE_WAIT_NANOS));
+                }
+                probing = true;
+                return new Permit(generation, true, 0);
+        }
+    }
+
+    /**
+     * Records the outcome of a request let through by {@link #tryAcquire}.
+     *
+     * @param permit The permit the request was let through with
+     * @param failed Whether the request failed because PagerDuty could not be reached or had an error
+     * @param now    The current {@link System#nanoTime()}
+     */
+    public synchronized void record(Permit permit, boolean failed, long now) {
+        if (!permit.isGranted() || permit.generation != generation) {
+            return;
+        }
+        if (permit.probe) {
+            probing = false;
+            if (failed) {
+                open(now);
+            } else {
+                LOGGER.log(Level.INFO, "PagerDuty is reachable again, resuming deliveries");
+                setState(State.CLOSED);
+                reset();
+            }
+            return;
+        }
+        if (recorded == outcomes.length) {
+            failures -= outcomes[next] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        outcomes[next] = failed;
+        failures += failed ? 1 : 0;
+        next = (next + 1) % outcomes.length;
+        if (recorded >= minimumRequests && failures * 100 >= failureRatePercent * recorded) {
+            LOGGER.log(Level.WARNING, "{0} of the last {1} requests to PagerDuty failed, pausing deliveries for {2}ms",
+                    new Object[] {failures, recorded, TimeUnit.NANOSECONDS.toMillis(openNanos)});
+            open(now);
+            reset();
+        }
+    }
+
+    /**
+     * @return Whether a response with this status means PagerDuty itself is failing
+     */
+    public static boolean isFailure(int code) {
+        return code >= 500;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void open(long now) {
+        setState(State.OPEN);
+        openUntil = now + openNanos;
+    }
+
+    private void setState(State state) {
+        this.state = state;
+        generation++;
+    }
+
+    private void reset() {
+        next = 0;
+        recorded = 0;
+        failures = 0;
+    }
+
+    /**
+     * The answer to {@link #tryAcquire}.
+     */
+    public static final class Permit {
+        private final long generation;
+
+        private final boolean probe;
+
+        private final long waitNanos;
+
+        Permit(long generation, boolean probe, long waitNanos) {
+            this.generation = generation;
+            this.probe = probe;
+            this.waitNanos = waitNanos;
+        }
+
+        /**
+         * @return Whether the request may be sent
+         */
+        public boolean isGranted() {
+            return waitNanos == 0;
+        }
+
+        /**
+         * @return 0 if the request may be sent, otherwise how many nanoseconds to wait before asking again
+         */
+        public long getWaitNanos() {
+            return waitNanos;
+        }
+    }
+
+    /**
+     * Thrown instead of sending a request while the circuit is open.
+     */
+    public static final class OpenException extends IOException {
+        private final long retryAfterNanos;
+
+        OpenException(long retryAfterNanos) {
+            super("PagerDuty is unreachable, not sending for the next " + TimeUnit.NANOSECONDS.toMillis(retryAfterNanos) + "ms");
+            this.retryAfterNanos = retryAfterNanos;
+        }
+
+        /**
+         * @return How long to wait before trying again, in nanoseconds
+         */
+        public long getRetryAfterNanos() {
+            return retryAfterNanos;
+        }
+    }
+}
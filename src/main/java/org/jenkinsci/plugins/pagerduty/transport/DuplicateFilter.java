@@ -0,0 +1,193 @@
+package org.jenkinsci.plugins.pagerduty.transport;
+
+import org.jenkinsci.plugins.pagerduty.metrics.PagerDutyMetrics;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * Drops events identical to one sent shortly before, as retried and replayed builds tend to send.
+ *
+ * Events are remembered by a fingerprint of their content, under their endpoint, routing key and dedup key (or,
+ * for events without a dedup key such as change events, their fingerprint). The content is the body, less
+ * whatever differs between otherwise identical events, such as the timestamp of a change event. An event with
+ * the same content as one
+ * remembered under the same key within the window is not sent again; its caller gets the response to the first
+ * one instead. Events are forgotten once the window has passed, when they could not be delivered or were
+ * rejected, and at most {@code maxEntries} are remembered, the oldest being forgotten first.
+ */
+public final class DuplicateFilter {
+
+    private static final Logger LOGGER = Logger.getLogger(DuplicateFilter.class.getName());
+
+    private static final DuplicateFilter INSTANCE = new DuplicateFilter(
+            Integer.getInteger(DuplicateFilter.class.getName() + ".maxEntries", 10000),
+            event -> EventDispatcher.get().dispatch(event), System::nanoTime);
+
+    private final int maxEntries;
+
+    private final Function<OutboundEvent, CompletableFuture<PagerDutyTransport.Response>> sender;
+
+    private final LongSupplier clock;
+
+    private final PagerDutyMetrics metrics = PagerDutyMetrics.get();
+
+    /**
+     * Sent events by key, oldest first. As the window may change between events, that is not necessarily
+     * the order in which they expire.
+     */
+    private final LinkedHashMap<String, Sent> sent = new LinkedHashMap<>();
+
+    DuplicateFilter(int maxEntries, Function<OutboundEvent, CompletableFuture<PagerDutyTransport.Response>> sender,
+                    LongSupplier clock) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.sender = sender;
+        this.clock = clock;
+    }
+
+    public static DuplicateFilter get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Sends an event unless an identical one was sent within the window.
+     *
+     * @param event         The event to send
+     * @param dedupKey      The dedup key of the incident the event is about, if any
+     * @param windowSeconds How long to remember sent events; 0 sends every event
+     * @return A future completed with PagerDuty's response to the event, or to the identical one sent before
+     */
+    public CompletableFuture<PagerDutyTransport.Response> submit(OutboundEvent event, @CheckForNull String dedupKey,
+                                                                 int windowSeconds) {
+        return submit(event, dedupKey, event.getBody(), windowSeconds);
+    }
+
+    /**
+     * Sends an event unless one with the same content was sent within the window.
+     *
+     * @param event         The event to send
+     * @param dedupKey      The dedup key of the incident the event is about, if any
+     * @param content       The parts of the event that make it identical to another
+     * @param windowSeconds How long to remember sent events; 0 sends every event
+     * @return A future completed with PagerDuty's response to the event, or to the identical one sent before
+     */
+    public CompletableFuture<PagerDutyTransport.Response> submit(OutboundEvent event, @CheckForNull String dedupKey,
+                                                                 byte[] content, int windowSeconds) {
+        if (windowSeconds <= 0) {
+            return sender.apply(event);
+        }
+        byte[] fingerprint = fingerprint(content);
+        String key = key(event.getEndpoint(), event.getRoutingKey(), dedupKey != null ? dedupKey : toHex(fingerprint));
+        Sent entry;
+        synchronized (sent) {
+            long now = clock.getAsLong();
+            expire(now);
+            Sent previous = sent.get(key);
+            // checked here as well, entries sent with a longer window may keep expired ones from being swept
+            if (previous != null && previous.expires - now > 0 && Arrays.equals(previous.fingerprint, fingerprint)) {
+                metrics.increment("events.suppressed");
+                LOGGER.log(Level.FINE, "Not sending an event identical to one sent to {0} {1}s ago",
+                        new Object[] {event.getEndpoint(), TimeUnit.NANOSECONDS.toSeconds(now - previous.time)});
+                return previous.future;
+            }
+            entry = new Sent(fingerprint, now + TimeUnit.SECONDS.toNanos(windowSeconds), now);
+            // re-inserted so the map stays ordered by the time events were sent
+            sent.remove(key);
+            sent.put(key, entry);
+            if (sent.size() > maxEntries) {
+                Iterator<Sent> eldest = sent.values().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        sender.apply(event).whenComplete((response, error) -> {
+            if (error != null || !response.isSuccessful()) {
+                // let a retry through
+                synchronized (sent) {
+                    sent.remove(key, entry);
+                }
+            }
+            if (error != null) {
+                entry.future.completeExceptionally(error);
+            } else {
+                entry.future.complete(response);
+            }
+        });
+        return entry.future;
+    }
+
+    /**
+     * Forgets the events sent about an incident, e.g. once it is resolved so triggering it again is not a duplicate.
+     */
+    public void forget(Endpoint endpoint, String routingKey, String dedupKey) {
+        synchronized (sent) {
+            sent.remove(key(endpoint, routingKey, dedupKey));
+        }
+    }
+
+    /**
+     * @return How many events are remembered
+     */
+    public int size() {
+        synchronized (sent) {
+            return sent.size();
+        }
+    }
+
+    /**
+     * Forgets the oldest events, as long as they have expired.
+     */
+    private void expire(long now) {
+        Iterator<Sent> entries = sent.values().iterator();
+        while (entries.hasNext() && entries.next().expires - now <= 0) {
+            entries.remove();
+        }
+    }
+
+    private static String key(Endpoint endpoint, String routingKey, String dedupKey) {
+        return endpoint + "\u0000" + routingKey + "\u0000" + dedupKey;
+    }
+
+    private static byte[] fingerprint(byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM has SHA-256
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static final class Sent {
+        private final byte[] fingerprint;
+
+        private final long expires;
+
+        private final long time;
+
+        private final CompletableFuture<PagerDutyTransport.Response> future = new CompletableFuture<>();
+
+        Sent(byte[] fingerprint, long expires, long time) {
+            this.fingerprint = fingerprint;
+            this.expires = expires;
+            this.time = time;
+        }
+    }
+}
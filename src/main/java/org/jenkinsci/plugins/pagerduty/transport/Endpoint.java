@@ -0,0 +1,39 @@
+package org.jenkinsci.plugins.pagerduty.transport;
+
+import org.jenkinsci.plugins.pagerduty.PagerDutyGlobalConfiguration;
+
+/**
+ * The PagerDuty Events API v2 endpoints this plugin sends to.
+ */
+public enum Endpoint {
+    /**
+     * Incident events: trigger, acknowledge and resolve.
+     */
+    EVENTS("/v2/enqueue"),
+
+    /**
+     * Change events.
+     */
+    CHANGE_EVENTS("/v2/change/enqueue");
+
+    private final String path;
+
+    Endpoint(String path) {
+        this.path = path;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return The URL of the endpoint under the configured Events API base URL
+     */
+    public String getUrl() {
+        return getUrl(PagerDutyGlobalConfiguration.get().getEventsApiUrl());
+    }
+
+    public String getUrl(String baseUrl) {
+        return baseUrl + path;
+    }
+}
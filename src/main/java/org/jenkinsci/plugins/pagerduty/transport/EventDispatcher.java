@@ -0,0 +1,545 @@
+package org.jenkinsci.plugins.pagerduty.transport;
+
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import org.jenkinsci.plugins.pagerduty.PagerDutyGlobalConfiguration;
+import org.jenkinsci.plugins.pagerduty.metrics.PagerDutyMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Controller-wide dispatcher that delivers events to PagerDuty off the build thread.
+ *
+ * Publishers and steps only enqueue an event and get back a future that completes once
+ * PagerDuty has answered, so executor hold time no longer depends on PagerDuty latency.
+ *
+ * Once Jenkins has started, every event is first appended to an {@link EventSpool} under
+ * {@code JENKINS_HOME/pagerduty/spool} and only acknowledged there once PagerDuty has accepted
+ * or definitively rejected it; events left over from before a restart are replayed in order.
+ * At most {@code queueCapacity} events are held in memory, anything beyond that waits in the spool.
+ * The number of workers and the queue capacity come from the global configuration and can be changed
+ * while events are being delivered.
+ * Without a spool (e.g. when Jenkins is not running) new events are rejected once the queue is full.
+ * When Jenkins stops, the workers are drained and the spool is closed; the dispatcher then starts over with
+ * fresh workers and reattaches a spool when Jenkins starts again in the same JVM (e.g. in tests).
+ *
+ * Sends to each routing key are paced by a {@link RateLimiter} sized in the global configuration;
+ * events over the limit wait in memory until a token is free rather than being rejected.
+ *
+ * Failures the {@link RetryPolicy} considers transient are retried from the {@link Timer}, never on
+ * a build thread. Callers get the last outcome after {@link RetryPolicy#getMaxAttempts()} attempts;
+ * a spooled event keeps being retried in the background after that, until PagerDuty accepts it or
+ * {@link RetryPolicy#getMaxSpooledAttempts()} is reached. It is then logged, acknowledged in the spool
+ * and its slot is freed. Retries due after Jenkins stopped are dropped rather than sent without the
+ * spool they were read from, and replayed after the restart.
+ *
+ * While the {@link CircuitBreaker} is open, deliveries are put back on the {@link Timer} without an
+ * attempt and without counting against the retries, and further events wait in the queue or spool.
+ */
+public final class EventDispatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(EventDispatcher.class.getName());
+
+    public static final int DEFAULT_WORKERS = Integer.getInteger(EventDispatcher.class.getName() + ".workers", 4);
+
+    public static final int DEFAULT_QUEUE_CAPACITY =
+            Integer.getInteger(EventDispatcher.class.getName() + ".queueCapacity", 1000);
+
+    private static final long SPOOL_FLUSH_MILLIS =
+            Long.getLong(EventDispatcher.class.getName() + ".spoolFlushMillis", 200);
+
+    private static final long SPOOL_SEGMENT_BYTES =
+            Long.getLong(EventDispatcher.class.getName() + ".spoolSegmentBytes", 8 * 1024 * 1024);
+
+    private static final int REPLAY_BATCH = 100;
+
+    private static final EventDispatcher INSTANCE = new EventDispatcher();
+
+    /**
+     * Replaced when Jenkins stops, so the dispatcher keeps working if it starts again.
+     */
+    private volatile ThreadPoolExecutor executor;
+
+    private volatile int workers = DEFAULT_WORKERS;
+
+    private volatile int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    private final RetryPolicy retryPolicy = RetryPolicy.get();
+
+    private final RateLimiter rateLimiter = new RateLimiter();
+
+    private final PagerDutyMetrics metrics = PagerDutyMetrics.get();
+
+    /**
+     * Events waiting for a worker.
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * Events held in memory: queued, in flight or waiting to be retried.
+     */
+    private final AtomicInteger active = new AtomicInteger();
+
+    /**
+     * Events accepted but not yet completed, including those only in the spool.
+     */
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private final Object lock = new Object();
+
+    private volatile EventSpool spool;
+
+    /**
+     * Periodic flush of {@link #spool}. Guarded by {@link #lock}.
+     */
+    private ScheduledFuture<?> spoolFlush;
+
+    /**
+     * Read position of events that are in the spool but not in memory, or {@code null} when
+     * every pending event is in memory. Guarded by {@link #lock}.
+     */
+    private EventSpool.Cursor backlog;
+
+    /**
+     * Callers' futures for events that are only in the spool. Guarded by {@link #lock}.
+     */
+    private final TreeMap<Long, CompletableFuture<PagerDutyTransport.Response>> parked = new TreeMap<>();
+
+    private EventDispatcher() {
+        executor = newExecutor(DEFAULT_WORKERS);
+        metrics.registerGauge("dispatcher.queued", queued::get);
+        metrics.registerGauge("dispatcher.in_flight", () -> PagerDutyTransport.get().getInFlight());
+        metrics.registerGauge("dispatcher.outstanding", outstanding::get);
+        metrics.registerGauge("dispatcher.spooled", this::getSpooled);
+        metrics.registerGauge("circuit.state", () -> CircuitBreaker.get().getState().ordinal());
+    }
+
+    public static EventDispatcher get() {
+        return INSTANCE;
+    }
+
+    private static ThreadPoolExecutor newExecutor(int workers) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), "PagerDuty event dispatcher"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void openSpool() {
+        synchronized (INSTANCE.lock) {
+            if (INSTANCE.executor.isShutdown()) {
+                INSTANCE.executor = newExecutor(INSTANCE.workers);
+            }
+        }
+        INSTANCE.reconfigure(PagerDutyGlobalConfiguration.get());
+        File directory = new File(Jenkins.get().getRootDir(), "pagerduty/spool");
+        try {
+            INSTANCE.attach(new EventSpool(directory, SPOOL_SEGMENT_BYTES));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not open the PagerDuty event spool in " + directory
+                    + ", undelivered events will not survive a restart", e);
+        }
+    }
+
+    /**
+     * Applies the worker count and queue capacity from the global configuration. Deliveries already
+     * running are not interrupted, and events beyond a lowered capacity stay queued.
+     */
+    public void reconfigure(PagerDutyGlobalConfiguration configuration) {
+        int workers = configuration.getDispatcherWorkers();
+        synchronized (lock) {
+            this.workers = workers;
+            ThreadPoolExecutor executor = this.executor;
+            if (workers > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(workers);
+                executor.setCorePoolSize(workers);
+            } else {
+                executor.setCorePoolSize(workers);
+                executor.setMaximumPoolSize(workers);
+            }
+        }
+        queueCapacity = configuration.getQueueCapacity();
+        pump();
+    }
+
+    private void attach(EventSpool spool) {
+        synchronized (lock) {
+            this.spool = spool;
+            long pending = spool.getPendingCount();
+            if (pending > 0) {
+                LOGGER.log(Level.INFO, "Replaying {0} undelivered PagerDuty events", pending);
+                backlog = spool.cursor();
+            }
+            spoolFlush = Timer.get().scheduleWithFixedDelay(this::flushSpool, SPOOL_FLUSH_MILLIS, SPOOL_FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        pump();
+    }
+
+    /**
+     * Stops using the spool. Events only in the spool are delivered once a spool is attached again.
+     *
+     * @return The spool, to be closed by the caller, or {@code null} if there was none
+     */
+    private EventSpool detach() {
+        synchronized (lock) {
+            EventSpool spool = this.spool;
+            this.spool = null;
+            backlog = null;
+            if (spoolFlush != null) {
+                spoolFlush.cancel(false);
+                spoolFlush = null;
+            }
+            for (CompletableFuture<PagerDutyTransport.Response> future : parked.values()) {
+                future.completeExceptionally(new RejectedExecutionException(
+                        "Jenkins is shutting down, the PagerDuty event will be delivered after the restart"));
+                completed();
+            }
+            parked.clear();
+            return spool;
+        }
+    }
+
+    /**
+     * Queues an event for delivery.
+     *
+     * @param event The event to send
+     * @return A future completed with PagerDuty's response, or exceptionally if the event
+     *         could not be queued or delivered
+     */
+    public CompletableFuture<PagerDutyTransport.Response> dispatch(OutboundEvent event) {
+        CompletableFuture<PagerDutyTransport.Response> future = new CompletableFuture<>();
+        synchronized (lock) {
+            EventSpool spool = this.spool;
+            if (spool == null) {
+                int capacity = queueCapacity;
+                if (active.get() >= capacity) {
+                    future.completeExceptionally(new RejectedExecutionException(
+                            "PagerDuty event queue is full (" + capacity + " events), dropping event"));
+                    return future;
+                }
+                outstanding.incrementAndGet();
+                start(new Delivery(null, -1, event, future));
+                return future;
+            }
+            long sequence = spool.append(event);
+            outstanding.incrementAndGet();
+            if (backlog == null && active.get() < queueCapacity) {
+                start(new Delivery(spool, sequence, event, future));
+            } else {
+                if (backlog == null) {
+                    backlog = spool.cursorAfter(sequence - 1);
+                }
+                parked.put(sequence, future);
+            }
+        }
+        return future;
+    }
+
+    private void start(Delivery delivery) {
+        active.incrementAndGet();
+        execute(delivery);
+    }
+
+    private void execute(Delivery delivery) {
+        if (delivery.isSpooled() && delivery.spool != spool) {
+            // a retry due after Jenkins stopped; the event is still in the spool and replayed after the restart
+            finish(delivery, null, new RejectedExecutionException(
+                    "Jenkins is shutting down, the PagerDuty event will be delivered after the restart"));
+            return;
+        }
+        queued.incrementAndGet();
+        try {
+            executor.execute(() -> deliver(delivery));
+        } catch (RejectedExecutionException e) {
+            // shutting down; a spooled event is replayed after the restart
+            queued.decrementAndGet();
+            finish(delivery, null, e);
+        }
+    }
+
+    private void deliver(Delivery delivery) {
+        queued.decrementAndGet();
+        OutboundEvent event = delivery.event;
+        try {
+            PagerDutyGlobalConfiguration configuration = PagerDutyGlobalConfiguration.get();
+            long wait = rateLimiter.tryAcquire(event.getRoutingKey(), configuration.getRateLimitPerMinute(),
+                    configuration.getRateLimitBurst(), System.nanoTime());
+            if (wait > 0) {
+                metrics.increment("deliveries.rate_limited");
+                schedule(delivery, wait, TimeUnit.NANOSECONDS);
+                return;
+            }
+            PagerDutyTransport.Response response = PagerDutyTransport.get().post(event.getEndpoint(), event.getRoutingKey(), event.getBody());
+            if (retryPolicy.isRetryable(response.getCode())) {
+                metrics.increment("deliveries.retried");
+                retryLater(delivery, response, null);
+            } else {
+                metrics.increment(response.isSuccessful() ? "deliveries.succeeded" : "deliveries.failed");
+                finish(delivery, response, null);
+            }
+        } catch (CircuitBreaker.OpenException e) {
+            // not an attempt, the event waits until PagerDuty is reachable again
+            metrics.increment("deliveries.deferred");
+            schedule(delivery, e.getRetryAfterNanos(), TimeUnit.NANOSECONDS);
+        } catch (IOException e) {
+            if (retryPolicy.isRetryable(e)) {
+                metrics.increment("deliveries.retried");
+                retryLater(delivery, null, e);
+            } else {
+                metrics.increment("deliveries.failed");
+                finish(delivery, null, e);
+            }
+        } catch (RuntimeException | Error e) {
+            metrics.increment("deliveries.failed");
+            finish(delivery, null, e);
+        } finally {
+            pump();
+        }
+    }
+
+    private void retryLater(Delivery delivery, PagerDutyTransport.Response response, IOException error) {
+        delivery.attempts++;
+        if (delivery.isSpooled() && delivery.attempts >= retryPolicy.getMaxSpooledAttempts()) {
+            LOGGER.log(Level.WARNING, "Giving up on PagerDuty {0} event {1} after {2} attempts: {3}",
+                    new Object[] {delivery.event.getEndpoint(), delivery.sequence, delivery.attempts,
+                            response != null ? "PagerDuty responded with " + response.getCode() : error});
+            metrics.increment("deliveries.abandoned");
+            finish(delivery, response, error);
+            return;
+        }
+        if (delivery.attempts >= retryPolicy.getMaxAttempts() && !delivery.future.isDone()) {
+            if (!delivery.isSpooled()) {
+                finish(delivery, response, error);
+                return;
+            }
+            // stop holding up the caller, but keep the event until PagerDuty takes it
+            complete(delivery.future, response, error);
+        }
+        long delay = retryPolicy.nextDelay(delivery.delayMillis, response != null ? response.getRetryAfter() : null);
+        delivery.delayMillis = delay;
+        LOGGER.log(Level.FINE, "Delivery of PagerDuty event {0} failed ({1}), retrying in {2}ms",
+                new Object[] {delivery.sequence, response != null ? "PagerDuty responded with " + response.getCode() : error, delay});
+        schedule(delivery, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void schedule(Delivery delivery, long delay, TimeUnit unit) {
+        try {
+            Timer.get().schedule(() -> execute(delivery), delay, unit);
+        } catch (RejectedExecutionException e) {
+            finish(delivery, null, e);
+        }
+    }
+
+    private void finish(Delivery delivery, PagerDutyTransport.Response response, Throwable error) {
+        if (delivery.isSpooled() && delivery.spool == spool && !(error instanceof RejectedExecutionException)) {
+            delivery.spool.acknowledge(delivery.sequence);
+        }
+        if (delivery.future.isDone() && delivery.attempts > 0) {
+            LOGGER.log(Level.INFO, "PagerDuty event {0} settled after {1} retries: {2}", new Object[] {delivery.sequence,
+                    delivery.attempts, response != null ? "PagerDuty responded with " + response.getCode() : error});
+        }
+        complete(delivery.future, response, error);
+        active.decrementAndGet();
+        completed();
+    }
+
+    private static void complete(CompletableFuture<PagerDutyTransport.Response> future,
+                                 PagerDutyTransport.Response response, Throwable error) {
+        if (error != null) {
+            future.completeExceptionally(error);
+        } else {
+            future.complete(response);
+        }
+    }
+
+    /**
+     * Moves events from the spool into memory as room becomes available.
+     */
+    private void pump() {
+        synchronized (lock) {
+            EventSpool spool = this.spool;
+            if (backlog == null || spool == null) {
+                return;
+            }
+            int room = queueCapacity - active.get();
+            if (room <= 0) {
+                return;
+            }
+            List<EventSpool.Record> records;
+            try {
+                records = spool.read(backlog, Math.min(room, REPLAY_BATCH));
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to read undelivered events from the PagerDuty spool", e);
+                return;
+            }
+            for (EventSpool.Record record : records) {
+                CompletableFuture<PagerDutyTransport.Response> future = parked.remove(record.getSequence());
+                if (future == null) {
+                    future = replayed(record.getSequence());
+                }
+                start(new Delivery(spool, record.getSequence(), record.getEvent(), future));
+            }
+            failLostEvents(backlog.getAfterSequence());
+            if (records.isEmpty() && backlog.getAfterSequence() >= spool.getLastSequence()) {
+                backlog = null;
+            }
+        }
+    }
+
+    /**
+     * Fails callers waiting on events the spool skipped because they never reached the disk.
+     */
+    private void failLostEvents(long through) {
+        Iterator<Map.Entry<Long, CompletableFuture<PagerDutyTransport.Response>>> lost =
+                parked.headMap(through, true).entrySet().iterator();
+        while (lost.hasNext()) {
+            lost.next().getValue().completeExceptionally(
+                    new IOException("PagerDuty event was lost because it could not be written to the spool"));
+            lost.remove();
+            completed();
+        }
+    }
+
+    private CompletableFuture<PagerDutyTransport.Response> replayed(long sequence) {
+        outstanding.incrementAndGet();
+        CompletableFuture<PagerDutyTransport.Response> future = new CompletableFuture<>();
+        future.whenComplete((response, error) -> {
+            if (error != null) {
+                LOGGER.log(Level.WARNING, "Failed to deliver replayed PagerDuty event " + sequence, error);
+            } else {
+                LOGGER.log(Level.FINE, "Replayed PagerDuty event {0}, PagerDuty responded with {1}",
+                        new Object[] {sequence, response.getCode()});
+            }
+        });
+        return future;
+    }
+
+    private void flushSpool() {
+        EventSpool spool = this.spool;
+        if (spool == null) {
+            return;
+        }
+        try {
+            spool.flush();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write to the PagerDuty event spool", e);
+        }
+        pump();
+    }
+
+    private void completed() {
+        if (outstanding.decrementAndGet() == 0) {
+            synchronized (outstanding) {
+                outstanding.notifyAll();
+            }
+        }
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * @return The number of events in the spool not yet acknowledged, or 0 without a spool
+     */
+    public long getSpooled() {
+        EventSpool spool = this.spool;
+        return spool != null ? spool.getPendingCount() : 0;
+    }
+
+    /**
+     * Waits until every accepted event has been delivered or has failed.
+     *
+     * @param timeout How long to wait
+     * @param unit    The unit of {@code timeout}
+     * @return Whether the dispatcher became idle within the timeout
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (outstanding) {
+            while (outstanding.get() > 0) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    return false;
+                }
+                outstanding.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    @Terminator
+    public static void shutdown() throws InterruptedException {
+        ThreadPoolExecutor executor = INSTANCE.executor;
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            LOGGER.log(Level.WARNING, "{0} PagerDuty events were still pending at shutdown", INSTANCE.getOutstanding());
+        }
+        EventSpool spool = INSTANCE.detach();
+        synchronized (INSTANCE.lock) {
+            // events sent from now on, e.g. by tests after Jenkins stopped, are delivered without a spool
+            INSTANCE.executor = newExecutor(INSTANCE.workers);
+        }
+        if (spool != null) {
+            try {
+                spool.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to close the PagerDuty event spool", e);
+            }
+        }
+        PagerDutyTransport.shutdown();
+    }
+
+    private static final class Delivery {
+        /**
+         * The spool the event is in, or {@code null} if it is only in memory.
+         */
+        private final EventSpool spool;
+        private final long sequence;
+        private final OutboundEvent event;
+        private final CompletableFuture<PagerDutyTransport.Response> future;
+
+        /**
+         * Failed attempts so far. Only touched by whichever thread currently runs the delivery.
+         */
+        private int attempts;
+
+        private long delayMillis;
+
+        Delivery(EventSpool spool, long sequence, OutboundEvent event, CompletableFuture<PagerDutyTransport.Response> future) {
+            this.spool = spool;
+            this.sequence = sequence;
+            this.event = event;
+            this.future = future;
+        }
+
+        boolean isSpooled() {
+            return spool != null;
+        }
+    }
+}
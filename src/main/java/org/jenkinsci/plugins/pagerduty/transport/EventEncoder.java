@@ -0,0 +1,201 @@
+package org.jenkinsci.plugins.pagerduty.transport;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+
+/**
+ * Encodes events as UTF-8 JSON request bodies with a streaming generator, without first copying them
+ * into maps or rendering them to a string.
+ *
+ * Every thread keeps one generator and its buffer, so encoding an event allocates little more than the
+ * resulting bytes, which are then handed to the {@link EventDispatcher} and written to the request as is.
+ */
+public final class EventEncoder {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * ISO 8601 in UTC with milliseconds, as the Events API expects timestamps.
+     */
+    public static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
+            .withZone(ZoneOffset.UTC);
+
+    private static final ThreadLocal<EventEncoder> ENCODERS = ThreadLocal.withInitial(EventEncoder::new);
+
+    private final ByteArrayBuilder buffer = new ByteArrayBuilder(1024);
+
+    private final JsonGenerator generator;
+
+    private EventEncoder() {
+        try {
+            generator = MAPPER.getFactory().createGenerator(buffer, JsonEncoding.UTF8);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // cannot happen with an in-memory buffer
+        }
+        generator.setRootValueSeparator(null);
+    }
+
+    /**
+     * Writes one event as a single JSON value.
+     */
+    public interface Body {
+        void write(JsonGenerator json) throws IOException;
+    }
+
+    /**
+     * @return The UTF-8 encoded JSON written by {@code body}
+     */
+    public static byte[] encode(Body body) throws IOException {
+        EventEncoder encoder = ENCODERS.get();
+        try {
+            body.write(encoder.generator);
+            encoder.generator.flush();
+            return encoder.buffer.toByteArray();
+        } catch (IOException | RuntimeException e) {
+            // the generator may be left in the middle of a value
+            ENCODERS.remove();
+            throw e;
+        } finally {
+            encoder.buffer.reset();
+        }
+    }
+
+    /**
+     * Encodes an object whose last field is an already encoded value, e.g. the payload shared by the events sent
+     * to several routing keys, copying the value's bytes rather than decoding and writing it again.
+     *
+     * @param fields    Writes the fields before {@code fieldName}
+     * @param fieldName The name of the last field
+     * @param value     The UTF-8 encoded JSON value of the last field
+     * @return The UTF-8 encoded JSON object
+     */
+    public static byte[] encode(Body fields, String fieldName, byte[] value) throws IOException {
+        SerializableString raw = new EncodedValue(value);
+        return encode(json -> {
+            json.writeStartObject();
+            fields.write(json);
+            json.writeFieldName(fieldName);
+            json.writeRawValue(raw);
+            json.writeEndObject();
+        });
+    }
+
+    public static void writeTimestampField(JsonGenerator json, String fieldName, Date timestamp) throws IOException {
+        json.writeStringField(fieldName, TIMESTAMP.format(timestamp.toInstant()));
+    }
+
+    /**
+     * Writes a string field, leaving it out when {@code value} is {@code null}.
+     */
+    public static void writeOptionalField(JsonGenerator json, String fieldName, String value) throws IOException {
+        if (value != null) {
+            json.writeStringField(fieldName, value);
+        }
+    }
+
+    /**
+     * An encoded JSON value, which the UTF-8 generator copies as is. Decoded only for generators writing characters.
+     */
+    private static final class EncodedValue implements SerializableString {
+        private final byte[] utf8;
+
+        private String value;
+
+        EncodedValue(byte[] utf8) {
+            this.utf8 = utf8;
+        }
+
+        @Override
+        public String getValue() {
+            if (value == null) {
+                value = new String(utf8, StandardCharsets.UTF_8);
+            }
+            return value;
+        }
+
+        @Override
+        public int charLength() {
+            return getValue().length();
+        }
+
+        @Override
+        public char[] asQuotedChars() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public byte[] asUnquotedUTF8() {
+            return utf8;
+        }
+
+        @Override
+        public byte[] asQuotedUTF8() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int appendQuotedUTF8(byte[] buffer, int offset) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int appendQuoted(char[] buffer, int offset) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int appendUnquotedUTF8(byte[] buffer, int offset) {
+            if (offset + utf8.length > buffer.length) {
+                return -1;
+            }
+            System.arraycopy(utf8, 0, buffer, offset, utf8.length);
+            return utf8.length;
+        }
+
+        @Override
+        public int appendUnquoted(char[] buffer, int offset) {
+            String value = getValue();
+            if (offset + value.length() > buffer.length) {
+                return -1;
+            }
+            value.getChars(0, value.length(), buffer, offset);
+            return value.length();
+        }
+
+        @Override
+        public int writeQuotedUTF8(OutputStream out) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int writeUnquotedUTF8(OutputStream out) throws IOException {
+            out.write(utf8);
+            return utf8.length;
+        }
+
+        @Override
+        public int putQuotedUTF8(ByteBuffer buffer) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int putUnquotedUTF8(ByteBuffer out) {
+            if (utf8.length > out.remaining()) {
+                return -1;
+            }
+            out.put(utf8);
+            return utf8.length;
+        }
+    }
+}
@@ -0,0 +1,510 @@
+package org.jenkinsci.plugins.pagerduty.transport;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, segmented on-disk log of events that have not been delivered yet.
+ *
+ * Appends only go to an in-memory buffer; {@link #flush()} writes and fsyncs everything buffered
+ * since the last flush in one go, so a burst of events costs one write per batch rather than one
+ * per event. A small index records which sequence numbers have been acknowledged. Everything
+ * after it is handed back by {@link #read(Cursor, int)} after a restart, in append order, and
+ * segments whose records have all been acknowledged are deleted.
+ *
+ * Each record is length-prefixed and checksummed, so a write torn by a crash is detected and
+ * truncated when the spool is reopened.
+ */
+public final class EventSpool implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(EventSpool.class.getName());
+
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final String INDEX_FILE = "acked.idx";
+
+    /**
+     * Upper bound on a single record, to reject garbage lengths read from a damaged segment.
+     */
+    private static final int MAX_RECORD_LENGTH = 16 * 1024 * 1024;
+
+    private final File directory;
+
+    private final long segmentSize;
+
+    // append side, guarded by this
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private long bufferFirstSequence = -1;
+    private long nextSequence;
+
+    // file side, guarded by fileLock
+    private final Object fileLock = new Object();
+    private final TreeMap<Long, File> segments = new TreeMap<>();
+    private FileChannel active;
+    private long activeFirstSequence = -1;
+
+    // acknowledgements, guarded by acknowledged
+    private final TreeSet<Long> acknowledged = new TreeSet<>();
+    private long acknowledgedThrough;
+    private boolean indexDirty;
+
+    /**
+     * Opens (or creates) the spool in {@code directory}, recovering from any torn write.
+     *
+     * @param directory   Where segments and the index are kept
+     * @param segmentSize The size after which a new segment is started
+     * @throws IOException If the spool could not be read
+     */
+    public EventSpool(File directory, long segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory.toPath());
+        readIndex();
+
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                try {
+                    segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), file);
+                } catch (NumberFormatException e) {
+                    LOGGER.log(Level.WARNING, "Ignoring unexpected file in PagerDuty spool: {0}", file);
+                }
+            }
+        }
+
+        long lastSequence = acknowledgedThrough;
+        if (!segments.isEmpty()) {
+            Map.Entry<Long, File> last = segments.lastEntry();
+            long lastInSegment = recover(last.getValue());
+            lastSequence = Math.max(lastSequence, Math.max(lastInSegment, last.getKey() - 1));
+            if (last.getValue().length() < segmentSize) {
+                active = FileChannel.open(last.getValue().toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                activeFirstSequence = last.getKey();
+            }
+        }
+        nextSequence = lastSequence + 1;
+        deleteAcknowledgedSegments();
+    }
+
+    /**
+     * Adds an event to the spool. It becomes durable on the next {@link #flush()}.
+     *
+     * @param event The event to append
+     * @return The sequence number assigned to the event
+     */
+    public synchronized long append(OutboundEvent event) {
+        long sequence = nextSequence++;
+        byte[] body = encode(sequence, event);
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        DataOutputStream out = new DataOutputStream(buffer);
+        try {
+            out.writeInt(body.length);
+            out.writeInt((int) crc.getValue());
+            out.write(body);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // cannot happen with an in-memory buffer
+        }
+        if (bufferFirstSequence < 0) {
+            bufferFirstSequence = sequence;
+        }
+        return sequence;
+    }
+
+    /**
+     * @return The sequence number of the most recently appended event
+     */
+    public synchronized long getLastSequence() {
+        return nextSequence - 1;
+    }
+
+    /**
+     * Marks an event as delivered (or as never to be delivered), so it is not replayed.
+     *
+     * @param sequence The sequence number returned by {@link #append(OutboundEvent)}
+     */
+    public void acknowledge(long sequence) {
+        synchronized (acknowledged) {
+            if (sequence <= acknowledgedThrough) {
+                return;
+            }
+            acknowledged.add(sequence);
+            while (acknowledged.remove(acknowledgedThrough + 1)) {
+                acknowledgedThrough++;
+            }
+            indexDirty = true;
+        }
+    }
+
+    public boolean isAcknowledged(long sequence) {
+        synchronized (acknowledged) {
+            return sequence <= acknowledgedThrough || acknowledged.contains(sequence);
+        }
+    }
+
+    /**
+     * @return The number of appended events not yet acknowledged
+     */
+    public long getPendingCount() {
+        long last = getLastSequence();
+        synchronized (acknowledged) {
+            return last - acknowledgedThrough - acknowledged.size();
+        }
+    }
+
+    /**
+     * Writes and fsyncs everything appended since the last flush, then persists the index and
+     * removes fully acknowledged segments.
+     *
+     * @throws IOException If the batch could not be written; its events stay deliverable from
+     *                     memory but will not survive a restart
+     */
+    public void flush() throws IOException {
+        synchronized (fileLock) {
+            byte[] bytes = null;
+            long firstSequence = -1;
+            synchronized (this) {
+                if (buffer.size() > 0) {
+                    bytes = buffer.toByteArray();
+                    firstSequence = bufferFirstSequence;
+                    buffer = new ByteArrayOutputStream();
+                    bufferFirstSequence = -1;
+                }
+            }
+            if (bytes != null) {
+                if (active == null || active.size() >= segmentSize) {
+                    roll(firstSequence);
+                }
+                ByteBuffer data = ByteBuffer.wrap(bytes);
+                while (data.hasRemaining()) {
+                    active.write(data);
+                }
+                active.force(false);
+            }
+            writeIndexIfDirty();
+            deleteAcknowledgedSegments();
+        }
+    }
+
+    /**
+     * @return A cursor positioned after the last acknowledged event, for replay
+     */
+    public Cursor cursor() {
+        synchronized (acknowledged) {
+            return new Cursor(acknowledgedThrough);
+        }
+    }
+
+    /**
+     * @param afterSequence The last sequence number the cursor has already seen
+     * @return A cursor that reads events appended after {@code afterSequence}
+     */
+    public Cursor cursorAfter(long afterSequence) {
+        return new Cursor(afterSequence);
+    }
+
+    /**
+     * Reads up to {@code max} unacknowledged, flushed events after the cursor, in append order,
+     * and advances the cursor past them.
+     *
+     * @param cursor Where to continue reading from
+     * @param max    The maximum number of events to return
+     * @return The events read, empty once the cursor has caught up with flushed data
+     * @throws IOException If a segment could not be read
+     */
+    public List<Record> read(Cursor cursor, int max) throws IOException {
+        List<Record> records = new ArrayList<>();
+        synchronized (fileLock) {
+            if (segments.isEmpty()) {
+                return records;
+            }
+            if (!segments.containsKey(cursor.segment)) {
+                Long floor = segments.floorKey(cursor.afterSequence + 1);
+                cursor.segment = floor != null ? floor : segments.firstKey();
+                cursor.position = 0;
+            }
+            while (records.size() < max) {
+                File file = segments.get(cursor.segment);
+                readSegment(file, cursor, records, max);
+                if (records.size() >= max) {
+                    break;
+                }
+                Long next = segments.higherKey(cursor.segment);
+                if (next == null) {
+                    break;
+                }
+                cursor.segment = next;
+                cursor.position = 0;
+            }
+        }
+        return records;
+    }
+
+    private void readSegment(File file, Cursor cursor, List<Record> records, int max) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            channel.position(cursor.position);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            while (records.size() < max && cursor.position < size) {
+                Record record = readRecord(in, size - cursor.position);
+                if (record == null) {
+                    LOGGER.log(Level.WARNING, "Skipping damaged data at offset {0} of {1}", new Object[] {cursor.position, file});
+                    cursor.position = size;
+                    break;
+                }
+                cursor.position += record.length;
+                if (record.sequence <= cursor.afterSequence) {
+                    continue;
+                }
+                // events missing from disk (a failed flush, or lost in a crash) can never be
+                // replayed, so stop them holding back the acknowledged index
+                for (long missing = cursor.afterSequence + 1; missing < record.sequence; missing++) {
+                    acknowledge(missing);
+                }
+                cursor.afterSequence = record.sequence;
+                if (!isAcknowledged(record.sequence)) {
+                    records.add(record);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (fileLock) {
+            flush();
+            if (active != null) {
+                active.close();
+                active = null;
+            }
+        }
+    }
+
+    private void roll(long firstSequence) throws IOException {
+        if (active != null) {
+            active.close();
+        }
+        File file = new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+        active = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        activeFirstSequence = firstSequence;
+        segments.put(firstSequence, file);
+    }
+
+    private void deleteAcknowledgedSegments() {
+        long through;
+        synchronized (acknowledged) {
+            through = acknowledgedThrough;
+        }
+        Map.Entry<Long, File> segment = segments.firstEntry();
+        while (segment != null && segment.getKey() != activeFirstSequence) {
+            Long next = segments.higherKey(segment.getKey());
+            if (next == null || next - 1 > through) {
+                break;
+            }
+            if (!segment.getValue().delete()) {
+                LOGGER.log(Level.WARNING, "Could not delete acknowledged PagerDuty spool segment {0}", segment.getValue());
+                break;
+            }
+            segments.remove(segment.getKey());
+            segment = segments.firstEntry();
+        }
+    }
+
+    /**
+     * Scans a segment, truncating it after the last intact record.
+     *
+     * @return The last sequence number found, or -1 if there were none
+     */
+    private long recover(File file) throws IOException {
+        long lastSequence = -1;
+        long valid = 0;
+        long size = file.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            while (valid < size) {
+                Record record = readRecord(in, size - valid);
+                if (record == null) {
+                    break;
+                }
+                valid += record.length;
+                lastSequence = record.sequence;
+            }
+        }
+        if (valid < size) {
+            LOGGER.log(Level.WARNING, "Truncating torn write at offset {0} of {1}", new Object[] {valid, file});
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+                channel.force(true);
+            }
+        }
+        return lastSequence;
+    }
+
+    /**
+     * @return The next record, or {@code null} if what follows is incomplete or damaged
+     */
+    private static Record readRecord(DataInputStream in, long remaining) throws IOException {
+        if (remaining < 8) {
+            return null;
+        }
+        try {
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if (length <= 0 || length > MAX_RECORD_LENGTH || length > remaining - 8) {
+                return null;
+            }
+            byte[] body = new byte[length];
+            in.readFully(body);
+            CRC32 crc = new CRC32();
+            crc.update(body, 0, body.length);
+            if ((int) crc.getValue() != checksum) {
+                return null;
+            }
+            return decode(body, 8 + length);
+        } catch (EOFException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static byte[] encode(long sequence, OutboundEvent event) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(event.getBody().length + 64);
+        try (DataOutputStream out = new DataOutputStream(body)) {
+            out.writeLong(sequence);
+            out.writeUTF(event.getEndpoint().name());
+            out.writeBoolean(event.getRoutingKey() != null);
+            if (event.getRoutingKey() != null) {
+                out.writeUTF(event.getRoutingKey());
+            }
+            byte[] payload = event.getBody();
+            out.writeInt(payload.length);
+            out.write(payload);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // cannot happen with an in-memory buffer
+        }
+        return body.toByteArray();
+    }
+
+    private static Record decode(byte[] body, int length) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        long sequence = in.readLong();
+        Endpoint endpoint = Endpoint.valueOf(in.readUTF());
+        String routingKey = in.readBoolean() ? in.readUTF() : null;
+        byte[] payload = new byte[in.readInt()];
+        in.readFully(payload);
+        return new Record(sequence, new OutboundEvent(endpoint, routingKey, payload), length);
+    }
+
+    private void readIndex() throws IOException {
+        File index = new File(directory, INDEX_FILE);
+        if (!index.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(index.toPath())))) {
+            acknowledgedThrough = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                acknowledged.add(in.readLong());
+            }
+        } catch (EOFException e) {
+            LOGGER.log(Level.WARNING, "PagerDuty spool index {0} is truncated, replaying from {1}",
+                    new Object[] {index, acknowledgedThrough});
+        }
+    }
+
+    private void writeIndexIfDirty() throws IOException {
+        long through;
+        long[] above;
+        synchronized (acknowledged) {
+            if (!indexDirty) {
+                return;
+            }
+            through = acknowledgedThrough;
+            above = new long[acknowledged.size()];
+            int i = 0;
+            for (Long sequence : acknowledged) {
+                above[i++] = sequence;
+            }
+            indexDirty = false;
+        }
+        File index = new File(directory, INDEX_FILE);
+        File temp = new File(directory, INDEX_FILE + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(file)) {
+            out.writeLong(through);
+            out.writeInt(above.length);
+            for (long sequence : above) {
+                out.writeLong(sequence);
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temp.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * A read position in the spool.
+     */
+    public static final class Cursor {
+        private long afterSequence;
+        private long segment = -1;
+        private long position;
+
+        private Cursor(long afterSequence) {
+            this.afterSequence = afterSequence;
+        }
+
+        /**
+         * @return The sequence number of the last event this cursor has passed
+         */
+        public long getAfterSequence() {
+            return afterSequence;
+        }
+    }
+
+    /**
+     * An event read back from the spool.
+     */
+    public static final class Record {
+        private final long sequence;
+        private final OutboundEvent event;
+        private final int length;
+
+        Record(long sequence, OutboundEvent event, int length) {
+            this.sequence = sequence;
+            this.event = event;
+            this.length = length;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public OutboundEvent getEvent() {
+            return event;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.jenkinsci.plugins.pagerduty.transport;
+
+import javax.annotation.Nonnull;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A fully encoded event waiting to be delivered to PagerDuty.
+ */
+public final class OutboundEvent {
+    /**
+     * The endpoint the event is posted to.
+     */
+    private final Endpoint endpoint;
+
+    /**
+     * The routing (integration) key the event is addressed to.
+     */
+    private final String routingKey;
+
+    /**
+     * The UTF-8 encoded JSON request body.
+     */
+    private final byte[] body;
+
+    public OutboundEvent(@Nonnull Endpoint endpoint, String routingKey, @Nonnull String payload) {
+        this(endpoint, routingKey, payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param body The UTF-8 encoded JSON request body, which must not be modified afterwards
+     */
+    public OutboundEvent(@Nonnull Endpoint endpoint, String routingKey, @Nonnull byte[] body) {
+        this.endpoint = endpoint;
+        this.routingKey = routingKey;
+        this.body = body;
+    }
+
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    public String getPayload() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The UTF-8 encoded request body, shared rather than copied, so it must not be modified
+     */
+    public byte[] getBody() {
+        return body;
+    }
+}
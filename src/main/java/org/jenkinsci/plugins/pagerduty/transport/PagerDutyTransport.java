@@ -0,0 +1,316 @@
+package org.jenkinsci.plugins.pagerduty.transport;
+
+import hudson.ProxyConfiguration;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.DefaultRoutePlanner;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.jenkinsci.plugins.pagerduty.PagerDutyGlobalConfiguration;
+import org.jenkinsci.plugins.pagerduty.metrics.PagerDutyMetrics;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Shared HTTP transport for every call made to the PagerDuty Events API.
+ *
+ * A single pooled client is kept for the lifetime of the controller so incident and change
+ * events reuse kept-alive connections instead of paying DNS, TCP and TLS setup on each send.
+ * Idle connections are evicted in the background.
+ *
+ * Timeouts and the number of connections per host come from the global configuration; besides the
+ * connect and read timeouts, a request that takes longer than the request timeout overall is aborted,
+ * so a connection that trickles data cannot hold a delivery thread indefinitely.
+ */
+public final class PagerDutyTransport {
+
+    private static final Logger LOGGER = Logger.getLogger(PagerDutyTransport.class.getName());
+
+    private static final int MAX_CONNECTIONS =
+            Integer.getInteger(PagerDutyTransport.class.getName() + ".maxConnections", 20);
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE =
+            Integer.getInteger(PagerDutyTransport.class.getName() + ".maxConnectionsPerRoute", 10);
+
+    private static final long KEEP_ALIVE_MILLIS =
+            Long.getLong(PagerDutyTransport.class.getName() + ".keepAliveMillis", TimeUnit.MINUTES.toMillis(1));
+
+    private static final long IDLE_EVICTION_MILLIS =
+            Long.getLong(PagerDutyTransport.class.getName() + ".idleEvictionMillis", TimeUnit.SECONDS.toMillis(30));
+
+    private static volatile PagerDutyTransport instance;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    private final CloseableHttpClient httpClient;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final CircuitBreaker circuitBreaker = CircuitBreaker.get();
+
+    private volatile RequestConfig requestConfig;
+
+    private volatile long requestTimeoutMillis;
+
+    private PagerDutyTransport() {
+        connectionManager = new PoolingHttpClientConnectionManager(KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS);
+        connectionManager.setValidateAfterInactivity(2000);
+        configure(PagerDutyGlobalConfiguration.get());
+
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(KEEP_ALIVE_STRATEGY)
+                .setRoutePlanner(new JenkinsProxyRoutePlanner())
+                .evictExpiredConnections()
+                .evictIdleConnections(IDLE_EVICTION_MILLIS, TimeUnit.MILLISECONDS)
+                .useSystemProperties()
+                .build();
+    }
+
+    public static PagerDutyTransport get() {
+        PagerDutyTransport transport = instance;
+        if (transport == null) {
+            synchronized (PagerDutyTransport.class) {
+                transport = instance;
+                if (transport == null) {
+                    transport = new PagerDutyTransport();
+                    instance = transport;
+                }
+            }
+        }
+        return transport;
+    }
+
+    /**
+     * Applies the timeouts and pool size from the global configuration to the transport, if it is in use.
+     * Requests already sent keep the settings they started with.
+     */
+    public static void reconfigure(PagerDutyGlobalConfiguration configuration) {
+        PagerDutyTransport transport = instance;
+        if (transport != null) {
+            transport.configure(configuration);
+        }
+    }
+
+    private void configure(PagerDutyGlobalConfiguration configuration) {
+        int perRoute = configuration.getMaxConnectionsPerRoute();
+        connectionManager.setMaxTotal(Math.max(MAX_CONNECTIONS, perRoute));
+        connectionManager.setDefaultMaxPerRoute(perRoute);
+        int connectTimeout = (int) TimeUnit.SECONDS.toMillis(configuration.getConnectTimeout());
+        requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setConnectionRequestTimeout(connectTimeout)
+                .setSocketTimeout((int) TimeUnit.SECONDS.toMillis(configuration.getReadTimeout()))
+                .build();
+        requestTimeoutMillis = TimeUnit.SECONDS.toMillis(configuration.getRequestTimeout());
+    }
+
+    /**
+     * POSTs a JSON document and returns the status code and body, whatever the status.
+     *
+     * @param url  The endpoint to post to
+     * @param json The request body
+     * @return The response from PagerDuty
+     * @throws IOException When the request could not be completed
+     */
+    public Response post(String url, String json) throws IOException {
+        return post(url, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * POSTs an already encoded JSON document, written to the request as is.
+     *
+     * @param url  The endpoint to post to
+     * @param json The UTF-8 encoded request body
+     * @return The response from PagerDuty
+     * @throws IOException When the request could not be completed
+     */
+    public Response post(String url, byte[] json) throws IOException {
+        HttpPost post = new HttpPost(url);
+        post.setConfig(requestConfig);
+        post.setEntity(new ByteArrayEntity(json, ContentType.APPLICATION_JSON));
+
+        long timeout = requestTimeoutMillis;
+        ScheduledFuture<?> abort = timeout > 0 ? Timer.get().schedule(post::abort, timeout, TimeUnit.MILLISECONDS) : null;
+        try (CloseableHttpResponse response = httpClient.execute(post)) {
+            HttpEntity entity = response.getEntity();
+            String body = entity != null ? EntityUtils.toString(entity, StandardCharsets.UTF_8) : "";
+            Header retryAfter = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+            return new Response(response.getStatusLine().getStatusCode(), body,
+                    retryAfter != null ? retryAfter.getValue() : null);
+        } catch (IOException e) {
+            if (post.isAborted()) {
+                InterruptedIOException timedOut = new InterruptedIOException(
+                        "Request to " + url + " did not complete within " + timeout + "ms");
+                timedOut.initCause(e);
+                throw timedOut;
+            }
+            throw e;
+        } finally {
+            if (abort != null) {
+                abort.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * POSTs an encoded event to one of the PagerDuty endpoints, recording the latency and outcome in
+     * {@link PagerDutyMetrics}. Nothing is sent while the {@link CircuitBreaker} is open.
+     *
+     * @param endpoint   The endpoint to post to
+     * @param routingKey The routing key the event is addressed to, only used to label metrics
+     * @param json       The UTF-8 encoded request body
+     * @return The response from PagerDuty
+     * @throws IOException When the request could not be completed
+     * @throws CircuitBreaker.OpenException When the request was not sent because PagerDuty is unreachable
+     */
+    public Response post(Endpoint endpoint, String routingKey, byte[] json) throws IOException {
+        PagerDutyMetrics metrics = PagerDutyMetrics.get();
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquire(System.nanoTime());
+        if (!permit.isGranted()) {
+            metrics.increment("circuit.rejected");
+            throw new CircuitBreaker.OpenException(permit.getWaitNanos());
+        }
+        inFlight.incrementAndGet();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Response response = post(endpoint.getUrl(), json);
+            metrics.increment("responses." + response.getCode());
+            failed = CircuitBreaker.isFailure(response.getCode());
+            return response;
+        } catch (IOException e) {
+            metrics.increment("responses.error");
+            throw e;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            circuitBreaker.record(permit, failed, System.nanoTime());
+            inFlight.decrementAndGet();
+            metrics.recordLatency("latency.endpoint." + endpoint.name(), elapsed);
+            metrics.recordLatency("latency.routing_key." + metrics.routingKeyLabel(routingKey), elapsed);
+        }
+    }
+
+    /**
+     * @return The number of requests currently waiting for PagerDuty
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Closes the pooled client. Called by the {@link EventDispatcher} once it has drained.
+     */
+    static void shutdown() {
+        PagerDutyTransport transport;
+        synchronized (PagerDutyTransport.class) {
+            transport = instance;
+            instance = null;
+        }
+        if (transport == null) {
+            return;
+        }
+        try {
+            transport.httpClient.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to close the PagerDuty HTTP client", e);
+        }
+    }
+
+    /**
+     * Honours the Keep-Alive header when PagerDuty sends one, otherwise keeps connections for
+     * a bounded time rather than indefinitely.
+     */
+    private static final ConnectionKeepAliveStrategy KEEP_ALIVE_STRATEGY = (response, context) -> {
+        long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+        return duration > 0 ? Math.min(duration, KEEP_ALIVE_MILLIS) : KEEP_ALIVE_MILLIS;
+    };
+
+    /**
+     * Routes through the Jenkins proxy as currently configured, so proxy changes apply without
+     * rebuilding the pool.
+     */
+    private static final class JenkinsProxyRoutePlanner extends DefaultRoutePlanner {
+        JenkinsProxyRoutePlanner() {
+            super(DefaultSchemePortResolver.INSTANCE);
+        }
+
+        @Override
+        protected HttpHost determineProxy(HttpHost target, HttpRequest request, HttpContext context) {
+            Jenkins jenkins = Jenkins.getInstanceOrNull();
+            ProxyConfiguration proxy = jenkins != null ? jenkins.proxy : null;
+            if (proxy == null || proxy.name == null || proxy.name.isEmpty()) {
+                return null;
+            }
+            List<Pattern> noProxyHosts = proxy.getNoProxyHostPatterns();
+            for (Pattern noProxyHost : noProxyHosts) {
+                if (noProxyHost.matcher(target.getHostName()).matches()) {
+                    return null;
+                }
+            }
+            return new HttpHost(proxy.name, proxy.port);
+        }
+    }
+
+    public static final class Response {
+        private final int code;
+
+        private final String body;
+
+        private final String retryAfter;
+
+        public Response(int code, String body) {
+            this(code, body, null);
+        }
+
+        public Response(int code, String body, String retryAfter) {
+            this.code = code;
+            this.body = body;
+            this.retryAfter = retryAfter;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        /**
+         * @return The raw {@code Retry-After} header, or {@code null} if PagerDuty did not send one
+         */
+        public String getRetryAfter() {
+            return retryAfter;
+        }
+
+        public boolean isSuccessful() {
+            return code >= 200 && code < 300;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.jenkinsci.plugins.pagerduty.transport;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client-side rate limit per routing key, so a burst of failures is spread out below PagerDuty's
+ * own throttling instead of being answered with 429s.
+ *
+ * Each key has a token bucket refilled at {@code eventsPerMinute} and holding at most
+ * {@code burst} tokens. The bucket is kept as a single {@link AtomicLong}: the time at which it
+ * will next be full. Taking a token pushes that time one refill interval further, and a token is
+ * available as long as the result is no more than {@code burst} intervals away, so acquiring is a
+ * single compare-and-set without locks.
+ */
+final class RateLimiter {
+
+    /**
+     * Above this many keys, buckets that have refilled completely are dropped again.
+     */
+    private static final int PRUNE_THRESHOLD = 1000;
+
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * Takes a token for the given key if one is available.
+     *
+     * @param key             The routing or integration key
+     * @param eventsPerMinute The sustained rate; 0 or less disables limiting
+     * @param burst           How many events may be sent back to back
+     * @param now             The current {@link System#nanoTime()}
+     * @return 0 if a token was taken, otherwise how many nanoseconds until one is available
+     */
+    long tryAcquire(String key, int eventsPerMinute, int burst, long now) {
+        if (key == null || eventsPerMinute <= 0) {
+            return 0;
+        }
+        long interval = TimeUnit.MINUTES.toNanos(1) / eventsPerMinute;
+        long capacity = interval * Math.max(1, burst);
+        AtomicLong fullAt = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        while (true) {
+            long current = fullAt.get();
+            long next = (current - now > 0 ? current : now) + interval;
+            long ahead = next - now;
+            if (ahead > capacity) {
+                return ahead - capacity;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                if (buckets.size() > PRUNE_THRESHOLD) {
+                    prune(now);
+                }
+                return 0;
+            }
+        }
+    }
+
+    int size() {
+        return buckets.size();
+    }
+
+    private void prune(long now) {
+        buckets.values().removeIf(fullAt -> fullAt.get() - now <= 0);
+    }
+}
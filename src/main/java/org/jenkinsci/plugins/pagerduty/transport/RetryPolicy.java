@@ -0,0 +1,127 @@
+package org.jenkinsci.plugins.pagerduty.transport;
+
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.utils.DateUtils;
+
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether a failed delivery is worth retrying and how long to wait before doing so.
+ *
+ * Throttling (429), server errors (5xx), request timeouts (408) and network failures are retried,
+ * anything else PagerDuty rejects (e.g. 400 for an invalid routing key) is fatal. Delays use
+ * decorrelated jitter, each one drawn between the base delay and three times the previous one and
+ * capped, so clients that failed together do not retry together. A {@code Retry-After} header
+ * from PagerDuty takes precedence over the computed delay.
+ *
+ * Callers are given the outcome after {@code maxAttempts}; an event kept in the spool is retried in the
+ * background until {@code maxSpooledAttempts}, then given up so a poison event cannot hold a slot forever.
+ */
+public final class RetryPolicy {
+
+    private static final RetryPolicy DEFAULT = new RetryPolicy(
+            Long.getLong(RetryPolicy.class.getName() + ".baseDelayMillis", TimeUnit.SECONDS.toMillis(1)),
+            Long.getLong(RetryPolicy.class.getName() + ".maxDelayMillis", TimeUnit.MINUTES.toMillis(5)),
+            Integer.getInteger(RetryPolicy.class.getName() + ".maxAttempts", 5),
+            Integer.getInteger(RetryPolicy.class.getName() + ".maxSpooledAttempts", 50));
+
+    /**
+     * Upper bound on a delay requested through {@code Retry-After}.
+     */
+    private static final long MAX_RETRY_AFTER_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final long baseDelayMillis;
+
+    private final long maxDelayMillis;
+
+    private final int maxAttempts;
+
+    private final int maxSpooledAttempts;
+
+    public RetryPolicy(long baseDelayMillis, long maxDelayMillis, int maxAttempts) {
+        this(baseDelayMillis, maxDelayMillis, maxAttempts, maxAttempts);
+    }
+
+    public RetryPolicy(long baseDelayMillis, long maxDelayMillis, int maxAttempts, int maxSpooledAttempts) {
+        this.baseDelayMillis = Math.max(1, baseDelayMillis);
+        this.maxDelayMillis = Math.max(this.baseDelayMillis, maxDelayMillis);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.maxSpooledAttempts = Math.max(this.maxAttempts, maxSpooledAttempts);
+    }
+
+    public static RetryPolicy get() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return Whether a request answered with this status should be sent again
+     */
+    public boolean isRetryable(int code) {
+        return code == 408 || code == 429 || code >= 500;
+    }
+
+    /**
+     * @return Whether a request that failed with this exception should be sent again
+     */
+    public boolean isRetryable(IOException e) {
+        // these will fail the same way every time until someone fixes the configuration
+        return !(e instanceof ClientProtocolException || e instanceof SSLHandshakeException
+                || e instanceof SSLPeerUnverifiedException);
+    }
+
+    /**
+     * @return How many attempts a caller waits for before it is given the last outcome
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @return How many attempts an event kept in the spool gets before it is given up
+     */
+    public int getMaxSpooledAttempts() {
+        return maxSpooledAttempts;
+    }
+
+    /**
+     * Computes the wait before the next attempt.
+     *
+     * @param previousDelayMillis The previous delay, or 0 before the first retry
+     * @param retryAfter          The {@code Retry-After} header of the failed response, if any
+     * @return The delay in milliseconds
+     */
+    public long nextDelay(long previousDelayMillis, String retryAfter) {
+        long requested = parseRetryAfter(retryAfter, System.currentTimeMillis());
+        if (requested >= 0) {
+            return Math.min(Math.max(requested, baseDelayMillis), MAX_RETRY_AFTER_MILLIS);
+        }
+        long upper = Math.max(baseDelayMillis, Math.min(maxDelayMillis, previousDelayMillis * 3));
+        if (upper <= baseDelayMillis) {
+            return baseDelayMillis;
+        }
+        return ThreadLocalRandom.current().nextLong(baseDelayMillis, upper + 1);
+    }
+
+    /**
+     * Parses a {@code Retry-After} value, given either in seconds or as an HTTP date.
+     *
+     * @return The delay in milliseconds, or -1 when absent or not understood
+     */
+    static long parseRetryAfter(String retryAfter, long now) {
+        if (retryAfter == null || retryAfter.trim().isEmpty()) {
+            return -1;
+        }
+        String value = retryAfter.trim();
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(value);
+            return date != null ? Math.max(0, date.getTime() - now) : -1;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package org.jenkinsci.plugins.pagerduty.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Finds the last dedup key logged as {@code <<key>>} in a console log without loading the log into memory.
+ *
+ * Plain logs are read backwards from the end in fixed-size chunks, so the scan stops as soon as the
+ * most recent key is found, usually after reading only the tail. Compressed logs cannot be read
+ * backwards and are streamed forwards instead. Either way memory use does not depend on the log size.
+ * Consecutive chunks overlap by the longest possible token, so a key split across a chunk boundary is
+ * still found.
+ */
+public final class DedupKeyScanner {
+
+    /**
+     * PagerDuty accepts dedup keys of up to 255 characters.
+     */
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private static final Pattern DEDUP_KEY = Pattern.compile("<<([0-9a-z]{1," + MAX_KEY_LENGTH + "})>>");
+
+    private static final int OVERLAP = MAX_KEY_LENGTH + 4;
+
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private DedupKeyScanner() {
+    }
+
+    /**
+     * @return The last dedup key in {@code text}, or {@code null} if there is none
+     */
+    public static String findLast(CharSequence text) {
+        if (text == null) {
+            return null;
+        }
+        Matcher matcher = DEDUP_KEY.matcher(text);
+        String last = null;
+        while (matcher.find()) {
+            last = matcher.group(1);
+        }
+        return last;
+    }
+
+    /**
+     * @param log A console log, compressed if its name ends with {@code .gz}
+     * @return The last dedup key in the log, or {@code null} if there is none or the log does not exist
+     * @throws IOException If the log could not be read
+     */
+    public static String findLast(File log) throws IOException {
+        if (log == null || !log.isFile()) {
+            return null;
+        }
+        if (log.getName().endsWith(".gz")) {
+            try (InputStream in = new GZIPInputStream(new FileInputStream(log), CHUNK_SIZE)) {
+                return findLast(in, CHUNK_SIZE);
+            }
+        }
+        try (RandomAccessFile file = new RandomAccessFile(log, "r")) {
+            return findLastReverse(file, CHUNK_SIZE);
+        }
+    }
+
+    static String findLastReverse(RandomAccessFile file, int chunkSize) throws IOException {
+        byte[] buffer = new byte[chunkSize + OVERLAP];
+        ByteSequence window = new ByteSequence(buffer);
+        long end = file.length();
+        int carried = 0;
+        while (end > 0) {
+            int length = (int) Math.min(chunkSize, end);
+            long start = end - length;
+            // keep the head of the chunk read before this one, which follows it in the file
+            System.arraycopy(buffer, 0, buffer, length, carried);
+            file.seek(start);
+            file.readFully(buffer, 0, length);
+            String key = findLast(window.limit(length + carried));
+            if (key != null) {
+                return key;
+            }
+            carried = Math.min(OVERLAP, length + carried);
+            end = start;
+        }
+        return null;
+    }
+
+    static String findLast(InputStream in, int chunkSize) throws IOException {
+        byte[] buffer = new byte[chunkSize + OVERLAP];
+        ByteSequence window = new ByteSequence(buffer);
+        String last = null;
+        int filled = 0;
+        int read;
+        while ((read = in.read(buffer, filled, buffer.length - filled)) != -1) {
+            filled += read;
+            if (filled < buffer.length) {
+                continue;
+            }
+            String key = findLast(window.limit(filled));
+            if (key != null) {
+                last = key;
+            }
+            // a key ending in the carried tail is found again, and a key starting there is completed
+            System.arraycopy(buffer, filled - OVERLAP, buffer, 0, OVERLAP);
+            filled = OVERLAP;
+        }
+        String key = findLast(window.limit(filled));
+        return key != null ? key : last;
+    }
+
+    /**
+     * Views bytes as Latin-1 characters without copying them, which is exact for the ASCII keys searched for.
+     */
+    private static final class ByteSequence implements CharSequence {
+        private final byte[] bytes;
+
+        private final int offset;
+
+        private int length;
+
+        ByteSequence(byte[] bytes) {
+            this(bytes, 0, 0);
+        }
+
+        private ByteSequence(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        ByteSequence limit(int length) {
+            this.length = length;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes[offset + index] & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new ByteSequence(bytes, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
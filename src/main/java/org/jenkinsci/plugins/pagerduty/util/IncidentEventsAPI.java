@@ -0,0 +1,130 @@
+package org.jenkinsci.plugins.pagerduty.util;
+
+import org.jenkinsci.plugins.pagerduty.PagerDutyGlobalConfiguration;
+import org.jenkinsci.plugins.pagerduty.transport.DuplicateFilter;
+import org.jenkinsci.plugins.pagerduty.transport.Endpoint;
+import org.jenkinsci.plugins.pagerduty.transport.EventDispatcher;
+import org.jenkinsci.plugins.pagerduty.transport.OutboundEvent;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Simple wrapper around calling the PagerDuty Events API v2 for incidents.
+ *
+ * See https://developer.pagerduty.com/docs/events-api-v2/trigger-events/
+ */
+public class IncidentEventsAPI {
+    /**
+     * Queues an incident event for delivery without waiting for PagerDuty.
+     *
+     * @param routingKey The routing key the event is addressed to
+     * @param json       The encoded event
+     * @return A future completed with PagerDuty's result
+     */
+    public static CompletableFuture<Result> enqueue(String routingKey, String json) {
+        return enqueue(routingKey, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Queues an already encoded incident event for delivery without waiting for PagerDuty.
+     *
+     * @param routingKey The routing key the event is addressed to
+     * @param json       The UTF-8 encoded event
+     * @return A future completed with PagerDuty's result
+     */
+    public static CompletableFuture<Result> enqueue(String routingKey, byte[] json) {
+        return EventDispatcher.get().dispatch(new OutboundEvent(Endpoint.EVENTS, routingKey, json))
+                .thenApply(response -> Result.fromResponse(response.getCode(), response.getBody()));
+    }
+
+    /**
+     * Queues a trigger event for delivery without waiting for PagerDuty, unless an identical one was sent for the
+     * same incident within the configured {@linkplain PagerDutyGlobalConfiguration#getDuplicateWindow() window}.
+     *
+     * @param routingKey The routing key the event is addressed to
+     * @param dedupKey   The dedup key of the incident
+     * @param json       The UTF-8 encoded event
+     * @return A future completed with PagerDuty's result, or with its result for the identical event
+     */
+    public static CompletableFuture<Result> enqueueTrigger(String routingKey, String dedupKey, byte[] json) {
+        return DuplicateFilter.get().submit(new OutboundEvent(Endpoint.EVENTS, routingKey, json), dedupKey,
+                PagerDutyGlobalConfiguration.get().getDuplicateWindow())
+                .thenApply(response -> Result.fromResponse(response.getCode(), response.getBody()));
+    }
+
+    /**
+     * Queues a resolve event for delivery without waiting for PagerDuty. Triggering the incident again afterwards
+     * is never taken for a duplicate.
+     *
+     * @param routingKey The routing key the event is addressed to
+     * @param dedupKey   The dedup key of the incident
+     * @param json       The UTF-8 encoded event
+     * @return A future completed with PagerDuty's result
+     */
+    public static CompletableFuture<Result> enqueueResolve(String routingKey, String dedupKey, byte[] json) {
+        DuplicateFilter.get().forget(Endpoint.EVENTS, routingKey, dedupKey);
+        return enqueue(routingKey, json);
+    }
+
+    /**
+     * The outcome of a single event, as reported by PagerDuty.
+     */
+    public static final class Result {
+        private final int code;
+
+        private final String status;
+
+        private final String message;
+
+        private final String dedupKey;
+
+        private final String errors;
+
+        public Result(int code, String status, String message, String dedupKey, String errors) {
+            this.code = code;
+            this.status = status;
+            this.message = message;
+            this.dedupKey = dedupKey;
+            this.errors = errors;
+        }
+
+        static Result fromResponse(int code, String body) {
+            try {
+                JSONObject json = new JSONObject(body);
+                Object errors = json.opt("errors");
+                return new Result(code, json.optString("status", null), json.optString("message", null),
+                        json.optString("dedup_key", null), errors != null ? errors.toString() : null);
+            } catch (JSONException e) {
+                // not every failure (e.g. from a proxy) carries a JSON body
+                return new Result(code, null, body, null, null);
+            }
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        public boolean isSuccessful() {
+            return code >= 200 && code < 300;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public String getDedupKey() {
+            return dedupKey;
+        }
+
+        public String getErrors() {
+            return errors;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.jenkinsci.plugins.pagerduty.util;
+
+import hudson.console.ConsoleNote;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the last lines of a console log, to show on-call engineers what went wrong without opening Jenkins.
+ *
+ * Like {@link DedupKeyScanner}, plain logs are read backwards from the end in fixed-size chunks and the read
+ * stops once enough lines were found, and compressed logs are streamed forwards keeping only the tail. At
+ * most {@code maxBytes} of the log are held in memory, whatever its size. The excerpt starts at the beginning
+ * of a line unless a single line is longer than {@code maxBytes}, and console notes are removed.
+ */
+public final class LogExcerpt {
+
+    /**
+     * PagerDuty rejects events larger than 512 KB; this leaves room for the rest of the event.
+     */
+    public static final int MAX_BYTES = 256 * 1024;
+
+    static final int CHUNK_SIZE = 8 * 1024;
+
+    private LogExcerpt() {
+    }
+
+    /**
+     * @param log      A console log, compressed if its name ends with {@code .gz}
+     * @param maxLines How many lines to return at most, or 0 for as many as fit into {@code maxBytes}
+     * @param maxBytes How many bytes of the log to return at most; capped to {@link #MAX_BYTES}
+     * @return The end of the log, or {@code null} if the log does not exist
+     * @throws IOException If the log could not be read
+     */
+    public static String tail(File log, int maxLines, int maxBytes) throws IOException {
+        if (log == null || !log.isFile()) {
+            return null;
+        }
+        int limit = Math.max(1, Math.min(maxBytes, MAX_BYTES));
+        byte[] excerpt;
+        if (log.getName().endsWith(".gz")) {
+            try (InputStream in = new GZIPInputStream(new FileInputStream(log), CHUNK_SIZE)) {
+                excerpt = tail(in, maxLines, limit);
+            }
+        } else {
+            try (RandomAccessFile file = new RandomAccessFile(log, "r")) {
+                excerpt = tailReverse(file, maxLines, limit, CHUNK_SIZE);
+            }
+        }
+        return ConsoleNote.removeNotes(new String(excerpt, StandardCharsets.UTF_8));
+    }
+
+    static byte[] tailReverse(RandomAccessFile file, int maxLines, int maxBytes, int chunkSize) throws IOException {
+        long end = file.length();
+        if (end > 0) {
+            file.seek(end - 1);
+            if (file.read() == '\n') {
+                end--;
+            }
+        }
+        long first = Math.max(0, end - maxBytes);
+        byte[] buffer = new byte[(int) (end - first)];
+        int lines = 0;
+        long position = end;
+        while (position > first) {
+            int length = (int) Math.min(chunkSize, position - first);
+            position -= length;
+            int offset = (int) (position - first);
+            file.seek(position);
+            file.readFully(buffer, offset, length);
+            for (int i = offset + length - 1; i >= offset; i--) {
+                if (buffer[i] == '\n' && ++lines == maxLines) {
+                    return Arrays.copyOfRange(buffer, i + 1, buffer.length);
+                }
+            }
+        }
+        return Arrays.copyOfRange(buffer, first > 0 ? startOfLine(buffer, buffer.length) : 0, buffer.length);
+    }
+
+    static byte[] tail(InputStream in, int maxLines, int maxBytes) throws IOException {
+        // the last maxBytes + 1 bytes, so a trailing newline can be dropped
+        byte[] ring = new byte[maxBytes + 1];
+        long total = 0;
+        int read;
+        byte[] chunk = new byte[CHUNK_SIZE];
+        while ((read = in.read(chunk)) != -1) {
+            for (int i = 0; i < read; ) {
+                int position = (int) (total % ring.length);
+                int length = Math.min(read - i, ring.length - position);
+                System.arraycopy(chunk, i, ring, position, length);
+                i += length;
+                total += length;
+            }
+        }
+        int size = (int) Math.min(total, ring.length);
+        byte[] buffer = new byte[size];
+        int start = (int) ((total - size) % ring.length);
+        int head = Math.min(size, ring.length - start);
+        System.arraycopy(ring, start, buffer, 0, head);
+        System.arraycopy(ring, 0, buffer, head, size - head);
+        int end = size > 0 && buffer[size - 1] == '\n' ? size - 1 : size;
+        int from = Math.max(0, end - maxBytes);
+        boolean truncated = from > 0 || total > size;
+        int lines = 0;
+        for (int i = end - 1; i >= from; i--) {
+            if (buffer[i] == '\n' && ++lines == maxLines) {
+                return Arrays.copyOfRange(buffer, i + 1, end);
+            }
+        }
+        byte[] excerpt = Arrays.copyOfRange(buffer, from, end);
+        return truncated ? Arrays.copyOfRange(excerpt, startOfLine(excerpt, excerpt.length), excerpt.length) : excerpt;
+    }
+
+    /**
+     * @return Where the first complete line of a truncated excerpt starts, or, if it is all one line, its first
+     *         complete character
+     */
+    private static int startOfLine(byte[] bytes, int length) {
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == '\n') {
+                return i + 1;
+            }
+        }
+        int i = 0;
+        // skip UTF-8 continuation bytes
+        while (i < length && (bytes[i] & 0xc0) == 0x80) {
+            i++;
+        }
+        return i;
+    }
+}
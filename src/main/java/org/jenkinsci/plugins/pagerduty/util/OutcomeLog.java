@@ -0,0 +1,160 @@
+package org.jenkinsci.plugins.pagerduty.util;
+
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.util.StreamTaskListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The build log of a build step that does not wait for PagerDuty, such as the post-build actions.
+ *
+ * PagerDuty usually answers after the step has returned, so the answer is written to the log later. The build
+ * never waits for PagerDuty: once it completes and its log is closed, answers still outstanding are written to
+ * the system log instead, and recorded on the build's {@link org.jenkinsci.plugins.pagerduty.PagerDutyIncidentAction}
+ * as before.
+ */
+public final class OutcomeLog {
+
+    private static final Logger LOGGER = Logger.getLogger(OutcomeLog.class.getName());
+
+    /**
+     * The logs of running builds.
+     */
+    private static final Map<Run<?, ?>, OutcomeLog> LOGS = new ConcurrentHashMap<>();
+
+    private final String name;
+
+    private final PrintStream buildLog;
+
+    private final Charset charset;
+
+    private final TaskListener listener;
+
+    /**
+     * Guarded by {@code this}.
+     */
+    private final List<CompletableFuture<?>> pending = new ArrayList<>();
+
+    /**
+     * Whether the build log is closed, so everything goes to the system log. Guarded by {@code this}.
+     */
+    private boolean closed;
+
+    OutcomeLog(String name, PrintStream buildLog, Charset charset) {
+        this.name = name;
+        this.buildLog = buildLog;
+        this.charset = charset != null ? charset : StandardCharsets.UTF_8;
+        this.listener = new StreamTaskListener(new Output(), this.charset);
+    }
+
+    /**
+     * @param listener The listener of the running build
+     * @return A listener writing to the log of {@code build} while it is running, and to the system log afterwards
+     */
+    public static TaskListener of(Run<?, ?> build, TaskListener listener) {
+        if (build == null) {
+            return listener;
+        }
+        return LOGS.computeIfAbsent(build, run -> new OutcomeLog(run.getFullDisplayName(), listener.getLogger(),
+                run.getCharset())).listener;
+    }
+
+    /**
+     * Tracks outcomes, so the build log can say how many are still outstanding when it is closed.
+     *
+     * @param outcomes Futures completed once the outcome was written to the listener from {@link #of}
+     */
+    public static void track(Run<?, ?> build, Collection<? extends CompletableFuture<?>> outcomes) {
+        OutcomeLog log = build != null ? LOGS.get(build) : null;
+        if (log != null) {
+            log.add(outcomes);
+        }
+    }
+
+    synchronized void add(Collection<? extends CompletableFuture<?>> outcomes) {
+        pending.removeIf(CompletableFuture::isDone);
+        pending.addAll(outcomes);
+    }
+
+    TaskListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Switches to the system log, without waiting for the outcomes still outstanding.
+     */
+    synchronized void close() {
+        pending.removeIf(CompletableFuture::isDone);
+        if (!pending.isEmpty()) {
+            buildLog.println("PagerDuty has not answered " + pending.size()
+                    + " event(s) yet, the outcome will be written to the Jenkins system log");
+        }
+        pending.clear();
+        closed = true;
+    }
+
+    /**
+     * Writes to the build log until it is closed, then line by line to the system log.
+     */
+    private final class Output extends OutputStream {
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        @Override
+        public void write(int b) {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            synchronized (OutcomeLog.this) {
+                if (!closed) {
+                    buildLog.write(b, off, len);
+                    return;
+                }
+                for (int i = off; i < off + len; i++) {
+                    if (b[i] == '\n') {
+                        LOGGER.log(Level.INFO, "{0}: {1}", new Object[] {name, new String(line.toByteArray(), charset)});
+                        line.reset();
+                    } else if (b[i] != '\r') {
+                        line.write(b[i]);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void flush() {
+            synchronized (OutcomeLog.this) {
+                if (!closed) {
+                    buildLog.flush();
+                }
+            }
+        }
+    }
+
+    @Extension
+    public static final class RunListenerImpl extends RunListener<Run<?, ?>> {
+        @Override
+        public void onCompleted(Run<?, ?> run, TaskListener listener) {
+            OutcomeLog log = LOGS.remove(run);
+            if (log != null) {
+                log.close();
+            }
+        }
+    }
+}
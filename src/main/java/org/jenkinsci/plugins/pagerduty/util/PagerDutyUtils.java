@@ -1,20 +1,37 @@
 package org.jenkinsci.plugins.pagerduty.util;
 
-import com.github.dikhan.pagerduty.client.events.PagerDutyEventsClient;
-import com.github.dikhan.pagerduty.client.events.domain.*;
-import com.github.dikhan.pagerduty.client.events.domain.ResolveIncident.ResolveIncidentBuilder;
-import com.github.dikhan.pagerduty.client.events.exceptions.NotifyEventException;
+import com.fasterxml.jackson.core.JsonGenerator;
 import hudson.FilePath;
-import hudson.ProxyConfiguration;
 import hudson.model.AbstractBuild;
 import hudson.model.Run;
 import hudson.model.TaskListener;
-import jenkins.model.Jenkins;
+import org.jenkinsci.plugins.pagerduty.PagerDutyIncidentAction;
 import org.jenkinsci.plugins.pagerduty.PagerDutyParamHolder;
+import org.jenkinsci.plugins.pagerduty.history.OpenIncident;
+import org.jenkinsci.plugins.pagerduty.history.OpenIncidentIndex;
+import org.jenkinsci.plugins.pagerduty.transport.EventEncoder;
 import org.jenkinsci.plugins.tokenmacro.MacroEvaluationException;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONString;
 
 import java.io.IOException;
-import java.util.regex.Matcher;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
 /**
@@ -22,54 +39,156 @@ import java.util.regex.Pattern;
  */
 public class PagerDutyUtils {
 
+    private static final Logger LOGGER = Logger.getLogger(PagerDutyUtils.class.getName());
+
+    /**
+     * The custom detail holding the end of the console log.
+     */
+    public static final String LOG_EXCERPT_FIELD = "log_excerpt";
+
+    /**
+     * The custom detail holding the test counts and failed tests, see {@link TestSummary}.
+     */
+    public static final String TEST_RESULTS_FIELD = "tests";
+
+    private static final int DEFAULT_LOG_EXCERPT_KB = 32;
+
+    private static final Pattern ROUTING_KEY_SEPARATOR = Pattern.compile("[,\\s]+");
+
+    /**
+     * @return The last dedup key logged as {@code <<key>>} in {@code log}, or {@code null} if there is none
+     */
     public static String extractDedupKey(String log) {
-        Pattern pattern = Pattern.compile(".*<<([0-9a-z]*)>>.*");
-        if (log == null) {
-            return null;
-        }
-        Matcher dedupKey = pattern.matcher(log);
+        return DedupKeyScanner.findLast(log);
+    }
+
+    /**
+     * Finds the last dedup key in a build's console log, reading the log backwards from its end.
+     *
+     * @return The dedup key, or {@code null} if there is none or the log could not be read
+     */
+    public static String extractDedupKey(Run<?, ?> build) {
         try {
-            dedupKey.find();
-            return dedupKey.group(1);
-        } catch (Exception e) {
+            return DedupKeyScanner.findLast(build.getLogFile());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read the dedup key from the log of " + build, e);
             return null;
         }
     }
 
-    public static boolean resolveIncident(PagerDutyParamHolder pdparams, AbstractBuild<?, ?> build, TaskListener listener) {
-        final PagerDutyEventsClient pagerDuty = createProxyAwarePagerDutyEventsClient();
-        if (pagerDuty == null) {
-            return false;
+    /**
+     * Like {@link #resolveIncidentAsync}, for callers that do not wait for PagerDuty. The outcome is written to
+     * the build log through an {@link OutcomeLog}.
+     *
+     * @return Whether the events were queued; {@code false} if they could not be encoded or the queue was full
+     */
+    public static boolean resolveIncident(PagerDutyParamHolder pdparams, Run<?, ?> build, TaskListener listener) {
+        List<CompletableFuture<IncidentEventsAPI.Result>> sent = resolve(pdparams, build, OutcomeLog.of(build, listener));
+        OutcomeLog.track(build, sent);
+        return queued(sent);
+    }
+
+    /**
+     * Queues a resolve event for the incident identified by the dedup key in {@code pdparams}, for each of
+     * its routing keys.
+     *
+     * The outcome is written to the build log once PagerDuty has responded, and recorded on
+     * {@code build} as a {@link PagerDutyIncidentAction} per routing key.
+     *
+     * @return A future completed with PagerDuty's result (see {@link #combine}), or with {@code null} if
+     *         there was nothing to resolve
+     */
+    public static CompletableFuture<IncidentEventsAPI.Result> resolveIncidentAsync(PagerDutyParamHolder pdparams, Run<?, ?> build, TaskListener listener) {
+        return combine(resolve(pdparams, build, listener));
+    }
+
+    /**
+     * @return The event queued for each routing key
+     */
+    private static List<CompletableFuture<IncidentEventsAPI.Result>> resolve(PagerDutyParamHolder pdparams, Run<?, ?> build, TaskListener listener) {
+        if (pdparams.getDedupKey() == null || pdparams.getDedupKey().trim().length() == 0) {
+            listener.getLogger().println("dedupKey not provided, nothing to resolve. (check previous builds for further clues)");
+            return Collections.singletonList(CompletableFuture.completedFuture(null));
         }
-        if (pdparams.getDedupKey() != null && pdparams.getDedupKey().trim().length() > 0) {
-            ResolveIncidentBuilder resolveIncidentBuilder = ResolveIncidentBuilder.newBuilder(pdparams.getRoutingKey(), pdparams.getDedupKey());
-            ResolveIncident resolveIncident = resolveIncidentBuilder.build();
-            listener.getLogger().printf("About to resolve incident:  %s%n", pdparams.getDedupKey());
-            try {
-                EventResult result = pagerDuty.resolve(resolveIncident);
-                if (result != null) {
-                    listener.getLogger().println("Finished resolving - " + result.getStatus());
+        String dedupKey = pdparams.getDedupKey();
+        List<String> routingKeys = routingKeysOf(pdparams.getRoutingKey());
+        List<byte[]> events = new ArrayList<>();
+        try {
+            for (String routingKey : routingKeys) {
+                events.add(EventEncoder.encode(json -> {
+                    json.writeStartObject();
+                    EventEncoder.writeOptionalField(json, "routing_key", routingKey);
+                    json.writeStringField("event_action", "resolve");
+                    json.writeStringField("dedup_key", dedupKey);
+                    json.writeEndObject();
+                }));
+            }
+        } catch (IOException e) {
+            e.printStackTrace(listener.error("Failed to encode the resolve event"));
+            CompletableFuture<IncidentEventsAPI.Result> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return Collections.singletonList(failed);
+        }
+        listener.getLogger().printf("About to resolve incident:  %s%n", dedupKey);
+        String jobFullName = getJobFullName(build);
+        OpenIncident resolved = jobFullName != null ? OpenIncidentIndex.get().closed(jobFullName, dedupKey) : null;
+        List<CompletableFuture<IncidentEventsAPI.Result>> sent = new ArrayList<>();
+        for (int i = 0; i < routingKeys.size(); i++) {
+            String prefix = logPrefix(routingKeys, i);
+            PagerDutyIncidentAction action = record(build, dedupKey, routingKeys.get(i), PagerDutyIncidentAction.Status.RESOLVED);
+            sent.add(IncidentEventsAPI.enqueueResolve(routingKeys.get(i), dedupKey, events.get(i)).whenComplete((result, error) -> {
+                if (error != null || !result.isSuccessful()) {
+                    markFailed(build, action);
+                    if (resolved != null && OpenIncidentIndex.get().get(jobFullName) == null) {
+                        // still open as far as PagerDuty is concerned
+                        OpenIncidentIndex.get().opened(jobFullName, resolved);
+                    }
+                }
+                if (error != null) {
+                    listener.getLogger().println(prefix + "Error while trying to resolve ");
+                    listener.getLogger().println(unwrap(error).getMessage());
+                } else if (result.isSuccessful()) {
+                    listener.getLogger().println(prefix + "Finished resolving - " + result.getStatus());
                 } else {
-                    listener.getLogger().println("Attempt to resolve the incident returned null - Incident may already be closed or may not exist.");
+                    listener.getLogger().printf("%sAttempt to resolve the incident was rejected (%d): %s %s%n",
+                            prefix, result.getCode(), result.getMessage(), result.getErrors());
                 }
-            } catch (Exception e) {
-                listener.getLogger().println("Error while trying to resolve ");
-                listener.getLogger().println(e.getMessage());
-                return false;
-            }
-        } else {
-            listener.getLogger().println("dedupKey not provided, nothing to resolve. (check previous builds for further clues)");
+            }));
         }
-        return true;
+        return sent;
     }
 
+    /**
+     * Like {@link #triggerPagerDutyAsync}, for callers that do not wait for PagerDuty. The outcome is written to
+     * the build log through an {@link OutcomeLog}.
+     *
+     * @return Whether the events were queued; {@code false} if they could not be encoded or the queue was full
+     */
     public static boolean triggerPagerDuty(PagerDutyParamHolder pdparams, Run<?, ?> build, FilePath workspace, TaskListener listener) {
-        PagerDutyEventsClient pagerDuty = createProxyAwarePagerDutyEventsClient();
-        if (pagerDuty == null) {
-            return false;
-        }
+        List<CompletableFuture<IncidentEventsAPI.Result>> sent = trigger(pdparams, build, workspace, OutcomeLog.of(build, listener));
+        OutcomeLog.track(build, sent);
+        return queued(sent);
+    }
+
+    /**
+     * Expands tokens in {@code pdparams} and queues a trigger event for each of its routing keys.
+     *
+     * Tokens are expanded and the payload is encoded once; only the routing key differs between the events,
+     * which are delivered concurrently. When no dedup key is configured one is generated here, so it is known
+     * (and logged) before PagerDuty has answered. Every routing key is sent the same dedup key, as PagerDuty
+     * deduplicates per service, and each event is recorded on {@code build} as a {@link PagerDutyIncidentAction}
+     * with its routing key. The outcome is written to the build log once PagerDuty has responded.
+     *
+     * @return A future completed with PagerDuty's result (see {@link #combine})
+     */
+    public static CompletableFuture<IncidentEventsAPI.Result> triggerPagerDutyAsync(PagerDutyParamHolder pdparams, Run<?, ?> build, FilePath workspace, TaskListener listener) {
+        return combine(trigger(pdparams, build, workspace, listener));
+    }
 
-        boolean hasDedupKey = false;
+    /**
+     * @return The event queued for each routing key
+     */
+    private static List<CompletableFuture<IncidentEventsAPI.Result>> trigger(PagerDutyParamHolder pdparams, Run<?, ?> build, FilePath workspace, TaskListener listener) {
         String routingKey = null;
 
         try {
@@ -79,55 +198,278 @@ public class PagerDutyUtils {
                 pdparams.tokenReplaceWorkflow(build, workspace, listener);
             }
 
+            if (pdparams.isLogExcerptEnabled() && build != null) {
+                attachLogExcerpt(pdparams, build, listener);
+            }
+            if (pdparams.isIncludeTestResults() && build != null) {
+                Map<String, Object> tests = TestSummary.of(build);
+                if (tests != null) {
+                    customDetails(pdparams).put(TEST_RESULTS_FIELD, new JSONObject(tests));
+                }
+            }
+
             routingKey = pdparams.getRoutingKey();
-            String dedupKey = pdparams.getDedupKey();
-            if (dedupKey != null && dedupKey.length() > 0) {
-                hasDedupKey = true;
+            List<String> routingKeys = routingKeysOf(routingKey);
+            if (pdparams.getDedupKey() == null || pdparams.getDedupKey().isEmpty()) {
+                pdparams.setDedupKey(generateDedupKey());
             }
 
             listener.getLogger().printf("Triggering pagerDuty with routingKey %s%n", routingKey);
 
             listener.getLogger().printf("summary %s%n", pdparams.getIncidentSummary());
             listener.getLogger().printf("severity %s%n", pdparams.getIncidentSeverity());
-            Payload.Builder payloadBuilder = Payload.Builder.newBuilder();
-            payloadBuilder.setSummary(pdparams.getIncidentSummary());
-            payloadBuilder.setCustomDetails(pdparams.getCustomDetails());
-            payloadBuilder.setSource(pdparams.getIncidentSource());
-            payloadBuilder.setSeverity(pdparams.getIncidentSeverity());
-            payloadBuilder.setComponent(pdparams.getIncidentComponent());
-            payloadBuilder.setGroup(pdparams.getIncidentGroup());
-            payloadBuilder.setEventClass(pdparams.getIncidentClass());
-            TriggerIncident.TriggerIncidentBuilder incBuilder = TriggerIncident.TriggerIncidentBuilder.newBuilder(routingKey, payloadBuilder.build());
-            if (hasDedupKey) {
-                incBuilder.setDedupKey(pdparams.getDedupKey());
+            String dedupKey = pdparams.getDedupKey();
+            byte[] payload = encodePayload(pdparams);
+            List<byte[]> triggerIncidents = new ArrayList<>();
+            for (String key : routingKeys) {
+                triggerIncidents.add(encodeTrigger(key, dedupKey, payload));
             }
-            EventResult result = pagerDuty.trigger(incBuilder.build());
+            listener.getLogger().printf("PagerDuty dedupKey: <<%s>>%n", dedupKey);
 
-            if (result != null) {
-                if (!hasDedupKey) {
-                    pdparams.setDedupKey(result.getDedupKey());
-                }
-                listener.getLogger().printf("PagerDuty Notification Result: %s%n", result.getStatus());
-                listener.getLogger().printf("Message: %s%n", result.getMessage());
-                listener.getLogger().printf("Errors: %s%n", result.getErrors());
-                listener.getLogger().printf("PagerDuty dedupKey: <<%s>>%n", pdparams.getDedupKey());
-            } else {
-                listener.getLogger().print("PagerDuty returned NULL. check network or PD settings!");
+            String jobFullName = getJobFullName(build);
+            OpenIncident open = jobFullName != null ? OpenIncidentIndex.get().get(jobFullName) : null;
+            // triggering an incident that is already open only updates it
+            boolean update = open != null && dedupKey.equals(open.getDedupKey());
+            if (jobFullName != null && !update) {
+                OpenIncidentIndex.get().opened(jobFullName, new OpenIncident(dedupKey, routingKey, build.getNumber(), System.currentTimeMillis()));
             }
-        } catch (RuntimeException | InterruptedException | IOException | MacroEvaluationException | NotifyEventException e) {
+            // the incident is open as long as one of the services accepted it
+            AtomicInteger failures = new AtomicInteger();
+            List<CompletableFuture<IncidentEventsAPI.Result>> sent = new ArrayList<>();
+            for (int i = 0; i < routingKeys.size(); i++) {
+                String incidentRoutingKey = routingKeys.get(i);
+                String prefix = logPrefix(routingKeys, i);
+                PagerDutyIncidentAction action = record(build, dedupKey, incidentRoutingKey, PagerDutyIncidentAction.Status.TRIGGERED);
+                sent.add(IncidentEventsAPI.enqueueTrigger(incidentRoutingKey, dedupKey, triggerIncidents.get(i)).whenComplete((result, error) -> {
+                    if (error != null || !result.isSuccessful()) {
+                        markFailed(build, action);
+                        if (failures.incrementAndGet() == routingKeys.size() && jobFullName != null && !update) {
+                            OpenIncidentIndex.get().closed(jobFullName, dedupKey);
+                        }
+                    }
+                    if (error != null) {
+                        unwrap(error).printStackTrace(listener.error("Tried to trigger PD with routingKey = [%s]", incidentRoutingKey));
+                    } else if (result.isSuccessful()) {
+                        listener.getLogger().printf("%sPagerDuty Notification Result: %s%n", prefix, result.getStatus());
+                        listener.getLogger().printf("%sMessage: %s%n", prefix, result.getMessage());
+                        listener.getLogger().printf("%sErrors: %s%n", prefix, result.getErrors());
+                    } else {
+                        listener.getLogger().printf("%sPagerDuty rejected the event (%d): %s%n", prefix, result.getCode(), result.getMessage());
+                        listener.getLogger().printf("%sErrors: %s%n", prefix, result.getErrors());
+                    }
+                }));
+            }
+            return sent;
+        } catch (RuntimeException | InterruptedException | IOException | MacroEvaluationException e) {
             e.printStackTrace(listener.error("Tried to trigger PD with routingKey = [%s]", routingKey));
-            return false;
+            CompletableFuture<IncidentEventsAPI.Result> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return Collections.singletonList(failed);
+        }
+    }
+
+    /**
+     * Adds the end of the build's console log to the custom details, as {@value #LOG_EXCERPT_FIELD}. Without a
+     * size configured, at most {@value #DEFAULT_LOG_EXCERPT_KB} KB are sent.
+     */
+    private static void attachLogExcerpt(PagerDutyParamHolder pdparams, Run<?, ?> build, TaskListener listener) {
+        int maxBytes = pdparams.getLogExcerptKb() > 0 ? pdparams.getLogExcerptKb() * 1024 : DEFAULT_LOG_EXCERPT_KB * 1024;
+        String excerpt;
+        try {
+            excerpt = LogExcerpt.tail(build.getLogFile(), pdparams.getLogExcerptLines(), maxBytes);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read the end of the log of " + build, e);
+            listener.getLogger().println("Could not read the console log to send to PagerDuty: " + e.getMessage());
+            return;
+        }
+        if (excerpt == null || excerpt.isEmpty()) {
+            return;
+        }
+        customDetails(pdparams).put(LOG_EXCERPT_FIELD, excerpt);
+    }
+
+    private static JSONObject customDetails(PagerDutyParamHolder pdparams) {
+        JSONObject customDetails = pdparams.getCustomDetails();
+        if (customDetails == null) {
+            customDetails = new JSONObject();
+            pdparams.setCustomDetails(customDetails);
+        }
+        return customDetails;
+    }
+
+    /**
+     * Splits a list of routing keys separated by commas or whitespace, such as {@code "key1, key2"}.
+     *
+     * @return The distinct routing keys, in the order given
+     */
+    public static List<String> splitRoutingKeys(String routingKeys) {
+        if (routingKeys == null) {
+            return Collections.emptyList();
+        }
+        Set<String> keys = new LinkedHashSet<>();
+        for (String key : ROUTING_KEY_SEPARATOR.split(routingKeys)) {
+            if (!key.isEmpty()) {
+                keys.add(key);
+            }
+        }
+        return new ArrayList<>(keys);
+    }
+
+    /**
+     * Like {@link #splitRoutingKeys}, but keeps a missing routing key so PagerDuty can report it as usual.
+     */
+    private static List<String> routingKeysOf(String routingKey) {
+        List<String> keys = splitRoutingKeys(routingKey);
+        return keys.isEmpty() ? Collections.singletonList(routingKey) : keys;
+    }
+
+    private static String logPrefix(List<String> routingKeys, int index) {
+        return routingKeys.size() > 1 ? "[" + routingKeys.get(index) + "] " : "";
+    }
+
+    /**
+     * Waits for the events sent to each routing key.
+     *
+     * @return A future completed with the result of the first event PagerDuty did not accept, or of the first
+     *         event if all were accepted; completed exceptionally if the first event that was not accepted
+     *         could not be delivered at all
+     */
+    private static CompletableFuture<IncidentEventsAPI.Result> combine(List<CompletableFuture<IncidentEventsAPI.Result>> sent) {
+        if (sent.size() == 1) {
+            return sent.get(0);
+        }
+        return CompletableFuture.allOf(sent.toArray(new CompletableFuture<?>[0])).handle((ignored, error) -> {
+            for (CompletableFuture<IncidentEventsAPI.Result> future : sent) {
+                IncidentEventsAPI.Result result = future.handle((r, e) -> r).join();
+                if (result == null || !result.isSuccessful()) {
+                    return future;
+                }
+            }
+            return sent.get(0);
+        }).thenCompose(future -> future);
+    }
+
+    /**
+     * @return Whether every event was accepted by the queue; a full queue refuses events as they are queued
+     */
+    private static boolean queued(List<CompletableFuture<IncidentEventsAPI.Result>> sent) {
+        for (CompletableFuture<IncidentEventsAPI.Result> future : sent) {
+            if (future.isCompletedExceptionally()) {
+                return false;
+            }
         }
         return true;
     }
 
-    private static PagerDutyEventsClient createProxyAwarePagerDutyEventsClient() {
-        final Jenkins jenkins = Jenkins.getInstanceOrNull();
-        final ProxyConfiguration proxy = jenkins != null ? jenkins.proxy : null;
-        if (proxy != null) {
-            return PagerDutyEventsClient.create(proxy.name, proxy.port);
+    private static PagerDutyIncidentAction record(Run<?, ?> build, String dedupKey, String routingKey,
+                                                  PagerDutyIncidentAction.Status status) {
+        if (build == null) {
+            return null;
+        }
+        PagerDutyIncidentAction action = new PagerDutyIncidentAction(dedupKey, routingKey, status, System.currentTimeMillis());
+        build.addAction(action);
+        return action;
+    }
+
+    private static String getJobFullName(Run<?, ?> build) {
+        return build != null && build.getParent() != null ? build.getParent().getFullName() : null;
+    }
+
+    private static void markFailed(Run<?, ?> build, PagerDutyIncidentAction action) {
+        if (action == null) {
+            return;
+        }
+        action.setStatus(PagerDutyIncidentAction.Status.FAILED);
+        if (!build.isBuilding()) {
+            // a running build is saved when it completes
+            try {
+                build.save();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to save the PagerDuty outcome of " + build, e);
+            }
+        }
+    }
+
+    /**
+     * Encodes the payload of a trigger event; like the Events API, leaves out any field that is not set.
+     */
+    static byte[] encodePayload(PagerDutyParamHolder pdparams) throws IOException {
+        return EventEncoder.encode(json -> {
+            json.writeStartObject();
+            EventEncoder.writeOptionalField(json, "summary", pdparams.getIncidentSummary());
+            EventEncoder.writeOptionalField(json, "source", pdparams.getIncidentSource());
+            json.writeStringField("severity", pdparams.getIncidentSeverity().name().toLowerCase(Locale.ENGLISH));
+            EventEncoder.writeOptionalField(json, "component", pdparams.getIncidentComponent());
+            EventEncoder.writeOptionalField(json, "group", pdparams.getIncidentGroup());
+            EventEncoder.writeOptionalField(json, "class", pdparams.getIncidentClass());
+            JSONObject customDetails = pdparams.getCustomDetails();
+            if (customDetails != null) {
+                json.writeFieldName("custom_details");
+                writeValue(json, customDetails);
+            }
+            json.writeEndObject();
+        });
+    }
+
+    /**
+     * Streams a value of a {@link JSONObject}, so custom details carrying a log excerpt are not first rendered
+     * to a string of their own.
+     */
+    private static void writeValue(JsonGenerator json, Object value) throws IOException {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            json.writeStartObject();
+            for (Iterator<String> keys = object.keys(); keys.hasNext(); ) {
+                String key = keys.next();
+                json.writeFieldName(key);
+                writeValue(json, object.opt(key));
+            }
+            json.writeEndObject();
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            json.writeStartArray();
+            for (int i = 0; i < array.length(); i++) {
+                writeValue(json, array.opt(i));
+            }
+            json.writeEndArray();
+        } else if (value == null || JSONObject.NULL.equals(value)) {
+            json.writeNull();
+        } else if (value instanceof Boolean) {
+            json.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer || value instanceof Long) {
+            json.writeNumber(((Number) value).longValue());
+        } else if (value instanceof BigInteger) {
+            json.writeNumber((BigInteger) value);
+        } else if (value instanceof BigDecimal) {
+            json.writeNumber((BigDecimal) value);
+        } else if (value instanceof Number) {
+            json.writeNumber(((Number) value).doubleValue());
+        } else if (value instanceof JSONString) {
+            json.writeRawValue(((JSONString) value).toJSONString());
         } else {
-            return PagerDutyEventsClient.create();
+            json.writeString(value.toString());
         }
     }
+
+    /**
+     * Encodes a trigger event around a payload from {@link #encodePayload}.
+     */
+    private static byte[] encodeTrigger(String routingKey, String dedupKey, byte[] payload) throws IOException {
+        return EventEncoder.encode(json -> {
+            EventEncoder.writeOptionalField(json, "routing_key", routingKey);
+            json.writeStringField("event_action", "trigger");
+            EventEncoder.writeOptionalField(json, "dedup_key", dedupKey);
+        }, "payload", payload);
+    }
+
+    /**
+     * Generates a dedup key in the same form PagerDuty uses for the keys it assigns.
+     */
+    private static String generateDedupKey() {
+        return UUID.randomUUID().toString().replace("-", "");
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
 }
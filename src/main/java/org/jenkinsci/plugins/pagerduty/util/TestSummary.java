@@ -0,0 +1,143 @@
+package org.jenkinsci.plugins.pagerduty.util;
+
+import hudson.model.Run;
+import hudson.tasks.test.AbstractTestResultAction;
+import hudson.tasks.test.TabulatedResult;
+import hudson.tasks.test.TestResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * Summarizes the test results of a build for an incident, so an unstable build says which tests failed.
+ *
+ * The counts are kept by the test result action itself; only the names of the first failed tests are looked
+ * up, and only when an incident is triggered. They are found by walking the test result tree into branches
+ * with failures and stopping once enough are found, rather than building the list of every failed test.
+ * At most {@link #MAX_TESTS} names and {@link #MAX_BYTES} bytes of names are sent, however many tests failed.
+ */
+public final class TestSummary {
+
+    static final int MAX_TESTS = Integer.getInteger(TestSummary.class.getName() + ".maxTests", 10);
+
+    static final int MAX_BYTES = Integer.getInteger(TestSummary.class.getName() + ".maxBytes", 4 * 1024);
+
+    private TestSummary() {
+    }
+
+    /**
+     * @return The summary, or {@code null} if the build has no test results
+     */
+    @CheckForNull
+    public static Map<String, Object> of(Run<?, ?> build) {
+        AbstractTestResultAction<?> action = build.getAction(AbstractTestResultAction.class);
+        if (action == null) {
+            return null;
+        }
+        Iterator<String> names = null;
+        if (action.getFailCount() > 0) {
+            Object result = action.getResult();
+            // aggregated results are not a tree of test results
+            Iterator<? extends TestResult> failed = result instanceof TestResult
+                    ? new FailedTests((TestResult) result) : action.getFailedTests().iterator();
+            names = new Iterator<String>() {
+                @Override
+                public boolean hasNext() {
+                    return failed.hasNext();
+                }
+
+                @Override
+                public String next() {
+                    return failed.next().getFullDisplayName();
+                }
+            };
+        }
+        return summarize(action.getTotalCount(), action.getFailCount(), action.getSkipCount(), names, MAX_TESTS, MAX_BYTES);
+    }
+
+    /**
+     * @param failedTests The names of the failed tests, read only as far as needed; {@code null} if none failed
+     */
+    static Map<String, Object> summarize(int total, int failed, int skipped, @CheckForNull Iterator<String> failedTests,
+                                         int maxTests, int maxBytes) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("total", total);
+        summary.put("failed", failed);
+        summary.put("skipped", skipped);
+        if (failedTests == null) {
+            return summary;
+        }
+        List<String> names = new ArrayList<>();
+        int bytes = 0;
+        while (names.size() < maxTests && failedTests.hasNext()) {
+            String name = failedTests.next();
+            if (name == null) {
+                continue;
+            }
+            bytes += name.getBytes(StandardCharsets.UTF_8).length;
+            if (bytes > maxBytes) {
+                break;
+            }
+            names.add(name);
+        }
+        summary.put("failed_tests", names);
+        if (failed > names.size()) {
+            summary.put("more_failed_tests", failed - names.size());
+        }
+        return summary;
+    }
+
+    /**
+     * The failed leaves of a test result tree, found depth first and only as far as they are read.
+     */
+    private static final class FailedTests implements Iterator<TestResult> {
+        private final Deque<Iterator<? extends TestResult>> branches = new ArrayDeque<>();
+
+        private TestResult next;
+
+        FailedTests(TestResult root) {
+            branches.push(Collections.singleton(root).iterator());
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !branches.isEmpty()) {
+                Iterator<? extends TestResult> branch = branches.peek();
+                if (!branch.hasNext()) {
+                    branches.pop();
+                    continue;
+                }
+                TestResult result = branch.next();
+                if (result.getFailCount() <= 0) {
+                    continue;
+                }
+                if (result instanceof TabulatedResult && ((TabulatedResult) result).hasChildren()) {
+                    branches.push(((TabulatedResult) result).getChildren().iterator());
+                } else {
+                    next = result;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public TestResult next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            TestResult result = next;
+            next = null;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package org.jenkinsci.plugins.pagerduty.util;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.model.AbstractBuild;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import org.jenkinsci.plugins.tokenmacro.MacroEvaluationException;
+import org.jenkinsci.plugins.tokenmacro.TokenMacro;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A configured field split once into literal text and the tokens within it, so expanding it for a build
+ * only evaluates the tokens.
+ *
+ * Tokens are {@code $NAME}, {@code ${NAME}} and {@code ${NAME, arg = "value"}}; {@code $$} stands for a
+ * literal {@code $}. Text without a {@code $} is returned as is, without compiling or looking anything up.
+ *
+ * Variables take precedence over macros, as with {@link TokenMacro#expandAll}, which substitutes environment
+ * and build variables before it evaluates macros: a token naming an environment variable (or, failing that, a
+ * build variable) is replaced with its value even if a macro has the same name, and only other tokens are handed
+ * to {@link TokenMacro}. Unlike {@code expandAll}, the value of a variable is inserted as is, so tokens within it
+ * are not expanded in turn.
+ *
+ * The {@link #MAX_CACHED} templates used most recently are kept.
+ */
+public final class TokenTemplate {
+
+    static final int MAX_CACHED = Integer.getInteger(TokenTemplate.class.getName() + ".maxCached", 1024);
+
+    /**
+     * Compiled templates by text, least recently used first. Guarded by itself.
+     */
+    private static final Map<String, TokenTemplate> TEMPLATES = new LinkedHashMap<String, TokenTemplate>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TokenTemplate> eldest) {
+            return size() > MAX_CACHED;
+        }
+    };
+
+    /**
+     * Literal text, and tokens as {@link Token}s, in order.
+     */
+    private final Object[] segments;
+
+    private TokenTemplate(Object[] segments) {
+        this.segments = segments;
+    }
+
+    /**
+     * @return The compiled template, shared by every caller that compiles the same text
+     */
+    public static TokenTemplate compile(String text) {
+        TokenTemplate template;
+        synchronized (TEMPLATES) {
+            template = TEMPLATES.get(text);
+        }
+        if (template == null) {
+            template = parse(text);
+            synchronized (TEMPLATES) {
+                TokenTemplate existing = TEMPLATES.putIfAbsent(text, template);
+                if (existing != null) {
+                    template = existing;
+                }
+            }
+        }
+        return template;
+    }
+
+    /**
+     * Expands the tokens in {@code text}, returning text without any unchanged.
+     */
+    public static String expand(String text, Context context) throws MacroEvaluationException, IOException, InterruptedException {
+        if (text == null || text.indexOf('$') < 0) {
+            return text;
+        }
+        return compile(text).expand(context);
+    }
+
+    /**
+     * Expands the tokens in the keys and string values of a JSON object, at any depth. The object is only
+     * copied if it contains a token, and values are replaced with the expanded text rather than being
+     * spliced into the JSON, so the result is never reparsed.
+     */
+    public static JSONObject expand(JSONObject json, Context context) throws MacroEvaluationException, IOException, InterruptedException {
+        if (json == null || !containsToken(json)) {
+            return json;
+        }
+        JSONObject expanded = new JSONObject();
+        for (String key : json.keySet()) {
+            expanded.put(expand(key, context), expandValue(json.get(key), context));
+        }
+        return expanded;
+    }
+
+    private static Object expandValue(Object value, Context context) throws MacroEvaluationException, IOException, InterruptedException {
+        if (value instanceof String) {
+            return expand((String) value, context);
+        } else if (value instanceof JSONObject) {
+            return expand((JSONObject) value, context);
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            JSONArray expanded = new JSONArray();
+            for (int i = 0; i < array.length(); i++) {
+                expanded.put(expandValue(array.get(i), context));
+            }
+            return expanded;
+        }
+        return value;
+    }
+
+    private static boolean containsToken(Object value) {
+        if (value instanceof String) {
+            return ((String) value).indexOf('$') >= 0;
+        } else if (value instanceof JSONObject) {
+            JSONObject json = (JSONObject) value;
+            for (String key : json.keySet()) {
+                if (containsToken(key) || containsToken(json.get(key))) {
+                    return true;
+                }
+            }
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            for (int i = 0; i < array.length(); i++) {
+                if (containsToken(array.get(i))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public String expand(Context context) throws MacroEvaluationException, IOException, InterruptedException {
+        if (segments.length == 1 && segments[0] instanceof String) {
+            return (String) segments[0];
+        }
+        StringBuilder expanded = new StringBuilder();
+        for (Object segment : segments) {
+            if (segment instanceof Token) {
+                Token token = (Token) segment;
+                String value = token.variable != null ? context.variable(token.variable) : null;
+                expanded.append(value != null ? value : context.macro(token.text));
+            } else {
+                expanded.append((String) segment);
+            }
+        }
+        return expanded.toString();
+    }
+
+    static TokenTemplate parse(String text) {
+        List<Object> segments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            int end = c == '$' ? tokenEnd(text, i) : -1;
+            if (end < 0) {
+                literal.append(c);
+                i++;
+            } else if (text.charAt(i + 1) == '$') {
+                literal.append('$');
+                i = end;
+            } else {
+                if (literal.length() > 0) {
+                    segments.add(literal.toString());
+                    literal.setLength(0);
+                }
+                segments.add(new Token(text.substring(i, end)));
+                i = end;
+            }
+        }
+        if (literal.length() > 0 || segments.isEmpty()) {
+            segments.add(literal.toString());
+        }
+        return new TokenTemplate(segments.toArray());
+    }
+
+    /**
+     * @return The index just past the token starting with the {@code $} at {@code start}, or -1 if there is none
+     */
+    private static int tokenEnd(String text, int start) {
+        int i = start + 1;
+        if (i >= text.length()) {
+            return -1;
+        }
+        char c = text.charAt(i);
+        if (c == '$') {
+            return i + 1;
+        }
+        if (c == '{') {
+            boolean quoted = false;
+            for (i++; i < text.length(); i++) {
+                c = text.charAt(i);
+                if (quoted && c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    quoted = !quoted;
+                } else if (c == '}' && !quoted) {
+                    return i + 1;
+                }
+            }
+            return -1;
+        }
+        while (i < text.length() && isNameChar(text.charAt(i))) {
+            i++;
+        }
+        return i > start + 1 ? i : -1;
+    }
+
+    private static boolean isNameChar(char c) {
+        return c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    private static final class Token {
+        /**
+         * The token as written, e.g. {@code ${BUILD_LOG, maxLines=10}}.
+         */
+        final String text;
+
+        /**
+         * The variable the token may refer to, or {@code null} if it has arguments.
+         */
+        final String variable;
+
+        Token(String text) {
+            this.text = text;
+            String name = text.charAt(1) == '{' ? text.substring(2, text.length() - 1).trim() : text.substring(1);
+            boolean plain = !name.isEmpty();
+            for (int i = 0; i < name.length() && plain; i++) {
+                plain = isNameChar(name.charAt(i)) || name.charAt(i) == '.';
+            }
+            this.variable = plain ? name : null;
+        }
+    }
+
+    /**
+     * Resolves the tokens of one build. The build's environment is only computed once, and only when a
+     * token needs it.
+     */
+    public abstract static class Context {
+
+        /**
+         * @return The value of the environment or build variable, or {@code null} if there is none
+         */
+        protected abstract String variable(String name) throws IOException, InterruptedException;
+
+        /**
+         * @param token A single token, including the {@code $}
+         */
+        protected abstract String macro(String token) throws MacroEvaluationException, IOException, InterruptedException;
+
+        public static Context of(AbstractBuild<?, ?> build, TaskListener listener) {
+            return new BuildContext(build, null, listener);
+        }
+
+        public static Context of(Run<?, ?> run, FilePath workspace, TaskListener listener) {
+            return new BuildContext(run, workspace, listener);
+        }
+    }
+
+    private static final class BuildContext extends Context {
+        private final Run<?, ?> run;
+
+        private final FilePath workspace;
+
+        private final TaskListener listener;
+
+        private EnvVars environment;
+
+        private Map<String, String> buildVariables;
+
+        BuildContext(Run<?, ?> run, FilePath workspace, TaskListener listener) {
+            this.run = run;
+            this.workspace = workspace;
+            this.listener = listener;
+        }
+
+        @Override
+        protected String variable(String name) throws IOException, InterruptedException {
+            if (environment == null) {
+                environment = run.getEnvironment(listener);
+            }
+            String value = environment.get(name);
+            if (value == null && run instanceof AbstractBuild) {
+                if (buildVariables == null) {
+                    buildVariables = ((AbstractBuild<?, ?>) run).getBuildVariables();
+                }
+                value = buildVariables.get(name);
+            }
+            return value;
+        }
+
+        @Override
+        protected String macro(String token) throws MacroEvaluationException, IOException, InterruptedException {
+            if (workspace == null && run instanceof AbstractBuild) {
+                return TokenMacro.expand((AbstractBuild<?, ?>) run, listener, token);
+            }
+            return TokenMacro.expand(run, workspace, listener, token);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.jenkinsci.plugins.pagerduty;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FlapDetectorTest {
+
+    @Test
+    public void testStartsAndStopsFlappingAtDifferentThresholds() {
+        FlapDetector detector = new FlapDetector();
+        assertFalse(detector.update("job", 3, 4, 1));
+        assertTrue(detector.update("job", 4, 4, 1));
+        assertTrue(detector.isFlapping("job"));
+
+        // stays flapping between the two thresholds
+        assertTrue(detector.update("job", 3, 4, 1));
+        assertTrue(detector.update("job", 2, 4, 1));
+        assertFalse(detector.update("job", 1, 4, 1));
+        assertFalse(detector.isFlapping("job"));
+
+        assertFalse(detector.update("job", 3, 4, 1));
+    }
+
+    @Test
+    public void testJobsAreTrackedSeparately() {
+        FlapDetector detector = new FlapDetector();
+        assertTrue(detector.update("flapping", 5, 4, 1));
+        assertFalse(detector.update("stable", 0, 4, 1));
+        assertTrue(detector.isFlapping("flapping"));
+        assertFalse(detector.isFlapping("stable"));
+    }
+
+    @Test
+    public void testStopThresholdBelowStartThreshold() {
+        FlapDetector detector = new FlapDetector();
+        assertTrue(detector.update("job", 2, 2, 5));
+        assertFalse(detector.update("job", 1, 2, 5));
+    }
+}
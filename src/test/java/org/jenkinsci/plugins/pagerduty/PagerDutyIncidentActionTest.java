@@ -0,0 +1,35 @@
+package org.jenkinsci.plugins.pagerduty;
+
+import hudson.model.Run;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PagerDutyIncidentActionTest {
+
+    @Test
+    public void testFindsLatestTriggeredIncident() {
+        Run run = mock(Run.class);
+        when(run.getActions(PagerDutyIncidentAction.class)).thenReturn(Arrays.asList(
+                new PagerDutyIncidentAction("first", "routingKey", PagerDutyIncidentAction.Status.TRIGGERED, 1),
+                new PagerDutyIncidentAction("second", "routingKey", PagerDutyIncidentAction.Status.TRIGGERED, 2),
+                new PagerDutyIncidentAction("third", "routingKey", PagerDutyIncidentAction.Status.FAILED, 3)));
+
+        assertEquals("second", PagerDutyIncidentAction.getTriggered(run).getDedupKey());
+    }
+
+    @Test
+    public void testNoTriggeredIncident() {
+        Run run = mock(Run.class);
+        when(run.getActions(PagerDutyIncidentAction.class)).thenReturn(Collections.singletonList(
+                new PagerDutyIncidentAction("key", "routingKey", PagerDutyIncidentAction.Status.RESOLVED, 1)));
+
+        assertNull(PagerDutyIncidentAction.getTriggered(run));
+    }
+}
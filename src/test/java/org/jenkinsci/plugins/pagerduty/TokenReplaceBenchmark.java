@@ -0,0 +1,36 @@
+package org.jenkinsci.plugins.pagerduty;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.TaskListener;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.jenkinsci.plugins.tokenmacro.MacroEvaluationException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.io.IOException;
+
+@JmhBenchmark
+public class TokenReplaceBenchmark {
+
+    public static class JenkinsState extends JmhBenchmarkState {
+        FreeStyleBuild build;
+
+        @Override
+        public void setup() throws Exception {
+            FreeStyleProject project = getJenkins().createProject(FreeStyleProject.class, "service");
+            build = project.scheduleBuild2(0).get();
+        }
+    }
+
+    @Benchmark
+    public PagerDutyParamHolder tokenReplace(JenkinsState state) throws InterruptedException, MacroEvaluationException, IOException {
+        PagerDutyParamHolder pdparams = new PagerDutyParamHolder("0123456789abcdef0123456789abcdef", "${JOB_NAME}-${BUILD_NUMBER}",
+                "${JOB_NAME} build ${BUILD_NUMBER} failed",
+                new JSONObject("{\"build\":\"${BUILD_URL}\",\"node\":\"${NODE_NAME}\",\"cause\":\"static\"}"),
+                "Jenkins", "critical", "${JOB_NAME}", "builds", "ci", 1, true, false, true, false, false, false);
+        pdparams.tokenReplace(state.build, TaskListener.NULL);
+        return pdparams;
+    }
+}
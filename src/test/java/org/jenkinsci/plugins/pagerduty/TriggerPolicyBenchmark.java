@@ -0,0 +1,54 @@
+package org.jenkinsci.plugins.pagerduty;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import jenkins.benchmark.jmh.JmhBenchmarkState;
+import org.jenkinsci.plugins.pagerduty.history.BuildResultHistory;
+import org.jenkinsci.plugins.pagerduty.history.ResultMask;
+import org.jvnet.hudson.test.FailureBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Evaluates trigger policies and flap detection for the last of 30 builds, whose results are known to
+ * the {@link BuildResultHistory} as the builds ran in the benchmarked Jenkins.
+ */
+@JmhBenchmark
+public class TriggerPolicyBenchmark {
+
+    public static class JenkinsState extends JmhBenchmarkState {
+        FreeStyleBuild build;
+
+        final TriggerPolicy consecutive = TriggerPolicy.compile(ResultMask.of(Result.FAILURE), 3, 3);
+
+        final TriggerPolicy window = TriggerPolicy.compile(ResultMask.of(Result.FAILURE, Result.UNSTABLE), 5, 20);
+
+        @Override
+        public void setup() throws Exception {
+            FreeStyleProject project = getJenkins().createProject(FreeStyleProject.class, "service");
+            for (int i = 0; i < 30; i++) {
+                project.getBuildersList().clear();
+                if (i % 2 == 1) {
+                    project.getBuildersList().add(new FailureBuilder());
+                }
+                build = project.scheduleBuild2(0).get();
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean consecutiveFailures(JenkinsState state) {
+        return state.consecutive.shouldTrigger(state.build);
+    }
+
+    @Benchmark
+    public boolean failuresInWindow(JenkinsState state) {
+        return state.window.shouldTrigger(state.build);
+    }
+
+    @Benchmark
+    public int flapTransitions(JenkinsState state) {
+        return BuildResultHistory.get().countTransitions(state.build, ResultMask.of(Result.FAILURE), 20);
+    }
+}
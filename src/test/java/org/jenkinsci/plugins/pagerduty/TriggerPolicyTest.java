@@ -0,0 +1,46 @@
+package org.jenkinsci.plugins.pagerduty;
+
+import hudson.model.Result;
+import hudson.model.Run;
+import org.jenkinsci.plugins.pagerduty.history.ResultMask;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TriggerPolicyTest {
+
+    @Test
+    public void testCompilesResultFlagsIntoMask() {
+        TriggerPolicy policy = TriggerPolicy.compile(false, true, true, false, false, 1, 1);
+        assertEquals(ResultMask.of(Result.FAILURE, Result.UNSTABLE), policy.getResultMask());
+        assertTrue(ResultMask.contains(policy.getResultMask(), Result.UNSTABLE));
+        assertFalse(ResultMask.contains(policy.getResultMask(), Result.SUCCESS));
+        assertFalse(ResultMask.contains(policy.getResultMask(), null));
+    }
+
+    @Test
+    public void testWindowNeverSmallerThanThreshold() {
+        assertTrue(TriggerPolicy.compile(ResultMask.of(Result.FAILURE), 3, 0).isConsecutive());
+        TriggerPolicy window = TriggerPolicy.compile(ResultMask.of(Result.FAILURE), 4, 10);
+        assertFalse(window.isConsecutive());
+        assertEquals(4, window.getThreshold());
+        assertEquals(10, window.getWindow());
+    }
+
+    @Test
+    public void testOnlyBuildsWithSelectedResultTrigger() {
+        Run failed = mock(Run.class);
+        when(failed.getResult()).thenReturn(Result.FAILURE);
+        Run succeeded = mock(Run.class);
+        when(succeeded.getResult()).thenReturn(Result.SUCCESS);
+
+        TriggerPolicy policy = TriggerPolicy.compile(false, true, false, false, false, 1, 1);
+        assertTrue(policy.shouldTrigger(failed));
+        assertFalse(policy.shouldTrigger(succeeded));
+        assertFalse(TriggerPolicy.compile(0, 1, 1).shouldTrigger(failed));
+    }
+}
@@ -0,0 +1,40 @@
+package org.jenkinsci.plugins.pagerduty.changeevents;
+
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+@JmhBenchmark
+public class ChangeEventBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Event {
+        ChangeEvent changeEvent;
+
+        @Setup
+        public void setup() {
+            Map<String, Object> customDetails = new HashMap<>();
+            customDetails.put("build", "team/service #1234");
+            customDetails.put("result", "SUCCESS");
+            customDetails.put("duration", "3 min 12 sec");
+            changeEvent = new ChangeEvent.Builder()
+                    .setIntegrationKey("0123456789abcdef0123456789abcdef")
+                    .setSummary("team/service #1234 built successfully")
+                    .setCustomDetails(customDetails)
+                    .addLink(new ChangeEvent.Link("https://jenkins.example.com/job/team/job/service/1234/", "Build"))
+                    .addLink(new ChangeEvent.Link("https://scm.example.com/team/service/commit/5e2f1a"))
+                    .build();
+        }
+    }
+
+    @Benchmark
+    public byte[] encode(Event event) throws IOException {
+        return ChangeEventSender.encode(event.changeEvent);
+    }
+}
@@ -0,0 +1,114 @@
+package org.jenkinsci.plugins.pagerduty.changeevents;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeEventCoalescerTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+
+    private final ChangeEventCoalescer coalescer = new ChangeEventCoalescer((integrationKey, json) -> {
+        sent.add(new String(json, StandardCharsets.UTF_8));
+        return CompletableFuture.completedFuture(new ChangeEventsAPI.Response(202, "OK"));
+    }, () -> scheduler);
+
+    @After
+    public void shutdownScheduler() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testSingleEventIsSentUnchanged() throws IOException {
+        CompletableFuture<ChangeEventsAPI.Response> response = coalescer.submit(event("key", 1), 60, 10);
+        assertFalse(response.isDone());
+
+        coalescer.flushAll();
+
+        assertEquals(202, response.join().getCode());
+        assertEquals(1, sent.size());
+        JsonNode json = new ObjectMapper().readTree(sent.get(0));
+        assertEquals("job #1", json.get("payload").get("summary").asText());
+        assertEquals(1, json.get("payload").get("custom_details").get("build_number").asInt());
+    }
+
+    @Test
+    public void testBurstIsMergedPerIntegrationKey() throws IOException {
+        CompletableFuture<ChangeEventsAPI.Response> first = coalescer.submit(event("key", 1), 60, 10);
+        CompletableFuture<ChangeEventsAPI.Response> second = coalescer.submit(event("key", 2), 60, 10);
+        coalescer.submit(event("other", 3), 60, 10);
+        assertSame(first, second);
+        assertEquals(2, coalescer.getOpenWindows());
+
+        coalescer.flushAll();
+
+        assertTrue(first.isDone());
+        assertEquals(0, coalescer.getOpenWindows());
+        assertEquals(2, sent.size());
+        JsonNode merged = null;
+        for (String json : sent) {
+            JsonNode node = new ObjectMapper().readTree(json);
+            if ("key".equals(node.get("routing_key").asText())) {
+                merged = node;
+            }
+        }
+        JsonNode payload = merged.get("payload");
+        assertEquals("job #2 (+1 more)", payload.get("summary").asText());
+        assertEquals(2, payload.get("custom_details").get("coalesced_events").asInt());
+        assertEquals("https://jenkins/job/1", payload.get("custom_details").get("builds").get(0).get("link").asText());
+        assertEquals(2, merged.get("links").size());
+    }
+
+    @Test
+    public void testEventsBeyondTheLimitAreOnlyCounted() throws IOException {
+        for (int i = 1; i <= 5; i++) {
+            coalescer.submit(event("key", i), 60, 2);
+        }
+
+        coalescer.flushAll();
+
+        JsonNode details = new ObjectMapper().readTree(sent.get(0)).get("payload").get("custom_details");
+        assertEquals(5, details.get("coalesced_events").asInt());
+        assertEquals(2, details.get("builds").size());
+        assertEquals(3, details.get("omitted_events").asInt());
+    }
+
+    @Test
+    public void testNewWindowOpensAfterFlush() {
+        CompletableFuture<ChangeEventsAPI.Response> first = coalescer.submit(event("key", 1), 60, 10);
+        coalescer.flushAll();
+        CompletableFuture<ChangeEventsAPI.Response> second = coalescer.submit(event("key", 2), 60, 10);
+
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+        assertEquals(1, coalescer.getOpenWindows());
+    }
+
+    private static ChangeEvent event(String integrationKey, int number) {
+        return new ChangeEvent.Builder()
+                .setIntegrationKey(integrationKey)
+                .setSummary("job #" + number)
+                .setTimestamp(new Date())
+                .setCustomDetails(Collections.singletonMap("build_number", number))
+                .addLink(new ChangeEvent.Link("https://jenkins/job/" + number, "View on Jenkins"))
+                .build();
+    }
+}
@@ -15,10 +15,12 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -104,11 +106,11 @@ public class ChangeEventSenderTest {
             }
         }
 
-        ArgumentCaptor<String> jsonArg = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<byte[]> jsonArg = ArgumentCaptor.forClass(byte[].class);
 
         //static method mocks using PowerMockito
         PowerMockito.mockStatic(ChangeEventsAPI.class);
-        when(ChangeEventsAPI.send(anyString())).thenReturn(new ChangeEventsAPI.Response(200, "OK"));
+        when(ChangeEventsAPI.enqueue(anyString(), any(byte[].class))).thenReturn(CompletableFuture.completedFuture(new ChangeEventsAPI.Response(200, "OK")));
         PowerMockito.mockStatic(DisplayURLProvider.class);
         when(DisplayURLProvider.get()).thenReturn(urlProvider);
         when(build.getFullDisplayName()).thenReturn(buildDisplayName);
@@ -126,10 +128,10 @@ public class ChangeEventSenderTest {
         changeEventSender.send(integrationKey, summaryText, customDetails, build, listener);
 
         PowerMockito.verifyStatic(ChangeEventsAPI.class, times(1));
-        ChangeEventsAPI.send(jsonArg.capture());
+        ChangeEventsAPI.enqueue(anyString(), jsonArg.capture());
 
         //Parse JSON and perform assertions
-        JSONObject sendBody = new JSONObject(jsonArg.getValue());
+        JSONObject sendBody = new JSONObject(new String(jsonArg.getValue(), StandardCharsets.UTF_8));
         String href = sendBody.getJSONArray("links").getJSONObject(0).getString("href");
         String summary = sendBody.getJSONObject("payload").getString("summary");
         String routingKey = sendBody.getString("routing_key");
@@ -3,6 +3,7 @@ package org.jenkinsci.plugins.pagerduty.changeevents;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 
@@ -39,4 +40,23 @@ public class ChangeEventTest {
         Assert.assertEquals(linkText, changeEvent.getLinks().get(0).getText());
         Assert.assertEquals("this", changeEvent.getCustomDetails().get("test"));
     }
+
+    @Test
+    public void testResentChangeEventsHaveTheSameContent() throws Exception {
+        HashMap<String, Object> customDetails = new HashMap<>();
+        customDetails.put("build_number", 42);
+        customDetails.put("duration", "1 min 3 sec");
+        ChangeEvent first = new ChangeEvent.Builder().setSummary(summary).setTimestamp(new Date(0))
+                .setIntegrationKey(integrationKey).setCustomDetails(new HashMap<>(customDetails)).addLink(link).build();
+        customDetails.put("duration", "2 min 10 sec");
+        ChangeEvent again = new ChangeEvent.Builder().setSummary(summary).setTimestamp(new Date(60000))
+                .setIntegrationKey(integrationKey).setCustomDetails(new HashMap<>(customDetails)).addLink(link).build();
+        customDetails.put("build_number", 43);
+        ChangeEvent next = new ChangeEvent.Builder().setSummary(summary).setTimestamp(new Date(60000))
+                .setIntegrationKey(integrationKey).setCustomDetails(customDetails).addLink(link).build();
+
+        byte[] content = ChangeEventsAPI.content(ChangeEventSender.encode(first));
+        Assert.assertArrayEquals(content, ChangeEventsAPI.content(ChangeEventSender.encode(again)));
+        Assert.assertFalse(Arrays.equals(content, ChangeEventsAPI.content(ChangeEventSender.encode(next))));
+    }
 }
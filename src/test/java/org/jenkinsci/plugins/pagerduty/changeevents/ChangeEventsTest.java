@@ -20,6 +20,8 @@ import org.powermock.modules.junit4.PowerMockRunner;
 import javax.annotation.Nonnull;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -52,11 +54,11 @@ public class ChangeEventsTest {
 
     @Test
     public void testBasicJsonFields() throws IOException {
-        ArgumentCaptor<String> jsonArg = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<byte[]> jsonArg = ArgumentCaptor.forClass(byte[].class);
 
         //static method mocks using PowerMockito
         PowerMockito.mockStatic(ChangeEventsAPI.class);
-        when(ChangeEventsAPI.send(anyString())).thenReturn(new ChangeEventsAPI.Response(200, "OK"));
+        when(ChangeEventsAPI.enqueue(anyString(), any(byte[].class))).thenReturn(CompletableFuture.completedFuture(new ChangeEventsAPI.Response(200, "OK")));
         PowerMockito.mockStatic(DisplayURLProvider.class);
         when(DisplayURLProvider.get()).thenReturn(urlProvider);
 
@@ -79,12 +81,12 @@ public class ChangeEventsTest {
 
         //mock API call
         PowerMockito.verifyStatic(ChangeEventsAPI.class, times(1));
-        ChangeEventsAPI.send(jsonArg.capture());
+        ChangeEventsAPI.enqueue(anyString(), jsonArg.capture());
         //Expecting jsonArg to contain a valid JSON string similar to the following
         //{"payload":{"summary":"testjobname built successfully","source":"Jenkins","custom_details":{"duration":null,"build_number":0, "field":"value"},"timestamp":"2021-03-17T21:45:24.808Z"},"links":[{"href":"http://www.testurl.com","text":"View on Jenkins"}],"routing_key":"testIntegration key"}
 
         //Parse JSON and perform assertions
-        JSONObject sendBody = new JSONObject(jsonArg.getValue());
+        JSONObject sendBody = new JSONObject(new String(jsonArg.getValue(), StandardCharsets.UTF_8));
         String href = sendBody.getJSONArray("links").getJSONObject(0).getString("href");
         String summary = sendBody.getJSONObject("payload").getString("summary");
         String routingKey = sendBody.getString("routing_key");
@@ -0,0 +1,138 @@
+package org.jenkinsci.plugins.pagerduty.history;
+
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BuildResultHistoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRingTracksRecentBuilds() {
+        ResultRing ring = new ResultRing(4);
+        assertEquals(ResultRing.UNKNOWN, ring.state(1));
+
+        ring.started(10);
+        ring.completed(10, Result.FAILURE);
+        ring.started(11);
+        ring.started(13);
+        ring.completed(13, Result.SUCCESS);
+
+        assertEquals(ResultRing.UNKNOWN, ring.state(9));
+        assertEquals(Result.FAILURE, ResultRing.decode(ring.state(10)));
+        assertEquals(ResultRing.RUNNING, ring.state(11));
+        assertEquals(ResultRing.ABSENT, ring.state(12));
+        assertEquals(Result.SUCCESS, ResultRing.decode(ring.state(13)));
+
+        ring.deleted(10);
+        assertEquals(ResultRing.ABSENT, ring.state(10));
+
+        ring.started(14);
+        assertEquals(ResultRing.UNKNOWN, ring.state(10));
+        assertEquals(ResultRing.RUNNING, ring.state(11));
+    }
+
+    @Test
+    public void testBuildsFromBeforeTheFirstStartAreNotTracked() {
+        ResultRing ring = new ResultRing(8);
+        ring.completed(4, Result.FAILURE);
+        ring.started(5);
+        ring.completed(3, Result.FAILURE);
+
+        assertEquals(ResultRing.UNKNOWN, ring.state(3));
+        assertEquals(ResultRing.UNKNOWN, ring.state(4));
+        assertEquals(ResultRing.RUNNING, ring.state(5));
+    }
+
+    @Test
+    public void testHistoryIsOnlyRestoredAfterCleanShutdown() throws IOException {
+        File file = new File(folder.newFolder(), "pagerduty/build-results.bin");
+        BuildResultHistory history = new BuildResultHistory(16);
+        history.load(file);
+        for (int number = 1; number <= 20; number++) {
+            history.started("folder/job", number);
+            history.completed("folder/job", number, number % 3 == 0 ? Result.FAILURE : Result.SUCCESS);
+        }
+        history.started("folder/job", 21);
+        history.save(true);
+
+        BuildResultHistory restored = new BuildResultHistory(16);
+        restored.load(file);
+        restored.started("folder/job", 22);
+        ResultRing ring = ring(restored, "folder/job");
+        assertEquals(ResultRing.UNKNOWN, ring.state(6));
+        assertEquals(Result.FAILURE, ResultRing.decode(ring.state(18)));
+        assertEquals(Result.SUCCESS, ResultRing.decode(ring.state(20)));
+        assertEquals(ResultRing.RUNNING, ring.state(21));
+
+        // loading marks the file unclean until the next clean shutdown
+        BuildResultHistory afterCrash = new BuildResultHistory(16);
+        afterCrash.load(file);
+        afterCrash.started("folder/job", 23);
+        assertEquals(ResultRing.UNKNOWN, ring(afterCrash, "folder/job").state(20));
+    }
+
+    @Test
+    public void testRenamedJobsKeepTheirHistory() {
+        BuildResultHistory history = new BuildResultHistory(8);
+        history.started("team/job", 1);
+        history.completed("team/job", 1, Result.FAILURE);
+
+        history.renamed("team", "squad");
+        assertEquals(Result.FAILURE, ResultRing.decode(ring(history, "squad/job").state(1)));
+
+        history.removed("squad");
+        history.started("squad/job", 2);
+        assertEquals(ResultRing.UNKNOWN, ring(history, "squad/job").state(1));
+    }
+
+    @Test
+    public void testCountsFromTheRingAndFallsBackToBuilds() {
+        BuildResultHistory history = new BuildResultHistory(8);
+        Job job = mock(Job.class);
+        when(job.getFullName()).thenReturn("job");
+        Run older = mock(Run.class);
+        when(older.getResult()).thenReturn(Result.FAILURE);
+        when(job.getNearestOldBuild(2)).thenReturn(older);
+        Run build = mock(Run.class);
+        when(build.getParent()).thenReturn(job);
+        when(build.getNumber()).thenReturn(7);
+        when(build.getResult()).thenReturn(Result.FAILURE);
+
+        history.started("job", 3);
+        history.completed("job", 3, Result.FAILURE);
+        history.started("job", 4);
+        history.completed("job", 4, Result.SUCCESS);
+        history.started("job", 5);
+        history.completed("job", 5, Result.FAILURE);
+        history.started("job", 6);
+        history.deleted("job", 6);
+        history.started("job", 7);
+
+        int failures = ResultMask.of(Result.FAILURE);
+        assertEquals(2, history.countConsecutive(build, failures, 10));
+        assertEquals(1, history.countConsecutive(build, failures, 1));
+        assertEquals(3, history.countInWindow(build, failures, 4));
+        assertEquals(4, history.countInWindow(build, failures, 5));
+        assertEquals(4, history.countInWindow(build, ResultMask.of(Result.FAILURE, Result.SUCCESS), 4));
+        assertEquals(1, history.countTransitions(build, failures, 3));
+        assertEquals(2, history.countTransitions(build, failures, 5));
+        assertEquals(0, history.countTransitions(build, failures, 1));
+    }
+
+    private static ResultRing ring(BuildResultHistory history, String job) {
+        return history.getRing(job);
+    }
+}
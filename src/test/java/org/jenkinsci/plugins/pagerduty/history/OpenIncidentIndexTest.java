@@ -0,0 +1,111 @@
+package org.jenkinsci.plugins.pagerduty.history;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OpenIncidentIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testIncidentsSurviveReload() throws IOException {
+        File journal = new File(folder.newFolder(), "pagerduty/open-incidents.journal");
+        OpenIncidentIndex index = new OpenIncidentIndex();
+        assertFalse(index.load(journal));
+
+        index.opened("folder/job", new OpenIncident("first", "routingKey", 3, 1000));
+        index.opened("other", new OpenIncident("second", null, 7, 2000));
+        assertNull(index.closed("other", "unrelated"));
+        assertEquals("second", index.closed("other", "second").getDedupKey());
+
+        OpenIncidentIndex reloaded = new OpenIncidentIndex();
+        assertTrue(reloaded.load(journal));
+        assertTrue(reloaded.isReady());
+        assertEquals(1, reloaded.getOpenIncidents().size());
+        OpenIncident incident = reloaded.get("folder/job");
+        assertEquals("first", incident.getDedupKey());
+        assertEquals("routingKey", incident.getRoutingKey());
+        assertEquals(3, incident.getBuildNumber());
+        assertEquals(1000, incident.getOpenedAt());
+        assertNull(reloaded.get("other"));
+    }
+
+    @Test
+    public void testJournalIsCompacted() throws IOException {
+        File journal = new File(folder.newFolder(), "open-incidents.journal");
+        OpenIncidentIndex index = new OpenIncidentIndex();
+        index.load(journal);
+        for (int i = 0; i < 5000; i++) {
+            index.opened("job", new OpenIncident("key" + i, "routingKey", i, i));
+        }
+        assertTrue(String.valueOf(journal.length()), journal.length() < 1000 * 64);
+
+        OpenIncidentIndex reloaded = new OpenIncidentIndex();
+        reloaded.load(journal);
+        assertEquals("key4999", reloaded.get("job").getDedupKey());
+    }
+
+    @Test
+    public void testJournalIsKeptWhenCompactionFails() throws IOException {
+        File journal = new File(folder.newFolder(), "open-incidents.journal");
+        // the snapshot cannot be written over a directory
+        assertTrue(new File(journal.getPath() + ".tmp", "blocked").mkdirs());
+        OpenIncidentIndex index = new OpenIncidentIndex();
+        index.load(journal);
+        for (int i = 0; i < 5000; i++) {
+            index.opened("job", new OpenIncident("key" + i, "routingKey", i, i));
+        }
+        index.opened("other", new OpenIncident("last", null, 1, 1));
+
+        OpenIncidentIndex reloaded = new OpenIncidentIndex();
+        reloaded.load(journal);
+        assertEquals("key4999", reloaded.get("job").getDedupKey());
+        assertEquals("last", reloaded.get("other").getDedupKey());
+    }
+
+    @Test
+    public void testIncompleteRecordIsTruncated() throws IOException {
+        File journal = new File(folder.newFolder(), "open-incidents.journal");
+        OpenIncidentIndex index = new OpenIncidentIndex();
+        index.load(journal);
+        index.opened("job", new OpenIncident("key", "routingKey", 1, 1));
+        long length = journal.length();
+        try (FileOutputStream out = new FileOutputStream(journal, true)) {
+            out.write(new byte[] {0, 0, 0, 40, 'O', 0});
+        }
+
+        OpenIncidentIndex reloaded = new OpenIncidentIndex();
+        assertTrue(reloaded.load(journal));
+        assertEquals("key", reloaded.get("job").getDedupKey());
+        assertEquals(length, journal.length());
+    }
+
+    @Test
+    public void testRenamesAndDeletesFollowItems() throws IOException {
+        OpenIncidentIndex index = new OpenIncidentIndex();
+        index.load(new File(folder.newFolder(), "open-incidents.journal"));
+        index.opened("team/build", new OpenIncident("a", null, 1, 1));
+        index.opened("team/deploy", new OpenIncident("b", null, 1, 1));
+        index.opened("teammate", new OpenIncident("c", null, 1, 1));
+
+        index.renamed("team", "squad");
+        assertEquals("a", index.get("squad/build").getDedupKey());
+        assertEquals("b", index.get("squad/deploy").getDedupKey());
+        assertEquals("c", index.get("teammate").getDedupKey());
+        assertNull(index.get("team/build"));
+
+        index.deleted("squad");
+        assertEquals(1, index.getOpenIncidents().size());
+    }
+}
@@ -0,0 +1,90 @@
+package org.jenkinsci.plugins.pagerduty.metrics;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PagerDutyMetricsTest {
+
+    private final PagerDutyMetrics metrics = new PagerDutyMetrics();
+
+    @Test
+    public void testHistogramPercentilesUseBucketBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileMillis(0.5));
+        for (int i = 0; i < 98; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(150));
+        histogram.record(TimeUnit.MINUTES.toNanos(2));
+        assertEquals(100, histogram.getCount());
+        assertEquals(5, histogram.getPercentileMillis(0.5));
+        assertEquals(200, histogram.getPercentileMillis(0.99));
+        assertEquals(Long.MAX_VALUE, histogram.getPercentileMillis(1));
+    }
+
+    @Test
+    public void testCountersAndLatenciesAreKeptWithoutASink() {
+        metrics.increment("responses.202");
+        metrics.increment("responses.202");
+        metrics.recordLatency("latency.endpoint.CHANGE", TimeUnit.MILLISECONDS.toNanos(40));
+        assertEquals(2, metrics.getCount("responses.202"));
+        assertEquals(0, metrics.getCount("responses.500"));
+        assertEquals(1, metrics.getHistogram("latency.endpoint.CHANGE").getCount());
+    }
+
+    @Test
+    public void testSinkReceivesExistingAndNewMetrics() {
+        Map<String, Long> counters = new HashMap<>();
+        Map<String, LongSupplier> gauges = new HashMap<>();
+        metrics.increment("deliveries.succeeded");
+        metrics.registerGauge("dispatcher.queued", () -> 7);
+        metrics.setSink(new PagerDutyMetrics.Sink() {
+            @Override
+            public void counter(String name, long delta) {
+                counters.merge(name, delta, Long::sum);
+            }
+
+            @Override
+            public void latency(String name, long nanos) {
+            }
+
+            @Override
+            public void gauge(String name, LongSupplier value) {
+                gauges.put(name, value);
+            }
+        });
+        metrics.increment("deliveries.succeeded");
+        assertEquals(Long.valueOf(2), counters.get("pagerduty.deliveries.succeeded"));
+        assertEquals(7, gauges.get("pagerduty.dispatcher.queued").getAsLong());
+        assertEquals(Long.valueOf(7), metrics.snapshot().get("pagerduty.dispatcher.queued"));
+    }
+
+    @Test
+    public void testRoutingKeyLabelsAreStableAndMasked() {
+        String key = "R0123456789abcdef0123456789abcde";
+        String label = metrics.routingKeyLabel(key);
+        assertEquals(label, metrics.routingKeyLabel(key));
+        assertTrue(label, label.matches("[0-9a-f]{12}"));
+        assertFalse(label.contains("R01234"));
+        assertNotEquals(label, metrics.routingKeyLabel("R01234-other-key"));
+        assertEquals("none", metrics.routingKeyLabel(null));
+    }
+
+    @Test
+    public void testRoutingKeyLabelsAreCapped() {
+        for (int i = 0; i < 100; i++) {
+            metrics.routingKeyLabel("key" + i);
+        }
+        assertEquals("other", metrics.routingKeyLabel("one-too-many"));
+        assertNotEquals("other", metrics.routingKeyLabel("key0"));
+    }
+}
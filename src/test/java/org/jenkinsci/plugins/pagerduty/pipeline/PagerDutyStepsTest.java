@@ -0,0 +1,153 @@
+package org.jenkinsci.plugins.pagerduty.pipeline;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import hudson.model.Result;
+import org.jenkinsci.plugins.pagerduty.PagerDutyGlobalConfiguration;
+import org.jenkinsci.plugins.pagerduty.PagerDutyIncidentAction;
+import org.jenkinsci.plugins.pagerduty.transport.Endpoint;
+import org.jenkinsci.plugins.pagerduty.transport.StubEventsServer;
+import org.jenkinsci.plugins.workflow.cps.CpsFlowDefinition;
+import org.jenkinsci.plugins.workflow.job.WorkflowJob;
+import org.jenkinsci.plugins.workflow.job.WorkflowRun;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PagerDutyStepsTest {
+
+    private static final String ROUTING_KEY = "R0123456789abcdef0123456789abcde";
+
+    @Rule
+    public JenkinsRule jenkins = new JenkinsRule();
+
+    private StubEventsServer server;
+
+    @Before
+    public void startServer() throws Exception {
+        server = new StubEventsServer().setLatency(500, TimeUnit.MILLISECONDS);
+        PagerDutyGlobalConfiguration.get().setEventsApiUrl(server.getBaseUrl());
+    }
+
+    @After
+    public void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void testChangeEventStepFinishesOnceAccepted() throws Exception {
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class, "service");
+        job.setDefinition(new CpsFlowDefinition(
+                "pagerdutyChangeEvent(integrationKey: '" + ROUTING_KEY + "', summaryText: 'deployed')\n"
+                        + "echo 'after the change event'", true));
+
+        WorkflowRun run = jenkins.buildAndAssertSuccess(job);
+        String log = JenkinsRule.getLog(run);
+        int responded = log.indexOf("PagerDuty Change Events responded with 202");
+        assertTrue(log, responded >= 0 && responded < log.indexOf("after the change event"));
+        assertEquals("deployed", server.getAccepted(Endpoint.CHANGE_EVENTS).get(0).path("payload").path("summary").asText());
+    }
+
+    @Test
+    public void testTriggerStepReturnsTheDedupKey() throws Exception {
+        server.failNext(1, 503).setRetryAfter("1");
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class, "service");
+        job.setDefinition(new CpsFlowDefinition(
+                "def key = pagerduty(routingKey: '" + ROUTING_KEY + "', dedupKey: 'service-1', incidentSummary: 'failed')\n"
+                        + "echo \"dedup key ${key}\"", true));
+
+        WorkflowRun run = jenkins.buildAndAssertSuccess(job);
+        jenkins.assertLogContains("PagerDuty Notification Result: success", run);
+        jenkins.assertLogContains("dedup key service-1", run);
+        assertEquals(2, server.getRequests().size());
+    }
+
+    @Test
+    public void testTriggerStepSendsToEveryRoutingKey() throws Exception {
+        String otherKey = "R1123456789abcdef0123456789abcde";
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class, "service");
+        job.setDefinition(new CpsFlowDefinition(
+                "pagerduty(routingKey: '" + ROUTING_KEY + "', routingKeys: ['" + otherKey + "'], dedupKey: 'service-${BUILD_NUMBER}', incidentSummary: 'failed')", true));
+
+        WorkflowRun run = jenkins.buildAndAssertSuccess(job);
+        List<JsonNode> accepted = server.getAccepted(Endpoint.EVENTS);
+        assertEquals(2, accepted.size());
+        Set<String> routingKeys = new HashSet<>();
+        for (JsonNode event : accepted) {
+            routingKeys.add(event.path("routing_key").asText());
+            assertEquals("service-1", event.path("dedup_key").asText());
+            assertEquals("failed", event.path("payload").path("summary").asText());
+        }
+        assertEquals(new HashSet<>(Arrays.asList(ROUTING_KEY, otherKey)), routingKeys);
+        assertTrue("events are sent concurrently", server.getMaxInFlight() > 1);
+
+        List<PagerDutyIncidentAction> actions = run.getActions(PagerDutyIncidentAction.class);
+        assertEquals(2, actions.size());
+        assertEquals(ROUTING_KEY, actions.get(0).getRoutingKey());
+        assertEquals(otherKey, actions.get(1).getRoutingKey());
+        assertEquals("service-1", actions.get(1).getDedupKey());
+    }
+
+    @Test
+    public void testBatchStepReturnsOneResultPerEvent() throws Exception {
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class, "services");
+        job.setDefinition(new CpsFlowDefinition(
+                "def results = pagerdutyBatch(events: [\n"
+                        + "  [type: 'change', integrationKey: '" + ROUTING_KEY + "', summaryText: 'deployed api'],\n"
+                        + "  [type: 'change', integrationKey: '" + ROUTING_KEY + "', summaryText: 'deployed web', customDetails: [version: '1.2']],\n"
+                        + "  [type: 'trigger', routingKey: '" + ROUTING_KEY + "', dedupKey: 'db-1', incidentSummary: 'migration failed'],\n"
+                        + "  [type: 'trigger', routingKey: '" + ROUTING_KEY + "', incidentSummary: 'migration failed']\n"
+                        + "])\n"
+                        + "echo \"results ${results.collect { it.status }} ${results[2].dedupKey} ${results[3].dedupKey != null}\"", true));
+
+        WorkflowRun run = jenkins.buildAndAssertSuccess(job);
+        jenkins.assertLogContains("results [success, success, success, success] db-1 true", run);
+        assertEquals(2, server.getAccepted(Endpoint.CHANGE_EVENTS).size());
+        assertEquals(2, server.getAccepted(Endpoint.EVENTS).size());
+        assertTrue("events are sent concurrently", server.getMaxInFlight() > 1);
+    }
+
+    @Test
+    public void testBatchStepRejectsInvalidEventsBeforeSending() throws Exception {
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class, "services");
+        job.setDefinition(new CpsFlowDefinition(
+                "pagerdutyBatch(events: [[type: 'change', integrationKey: '" + ROUTING_KEY + "'], [type: 'trigger']])", true));
+
+        WorkflowRun run = jenkins.assertBuildStatus(Result.FAILURE, job.scheduleBuild2(0));
+        jenkins.assertLogContains("routingKey is required for PagerDuty trigger events", run);
+        assertTrue(server.getRequests().isEmpty());
+    }
+
+    @Test
+    public void testBatchStepRejectsInvalidParametersBeforeSending() throws Exception {
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class, "services");
+        job.setDefinition(new CpsFlowDefinition(
+                "pagerdutyBatch(events: [[type: 'change', integrationKey: '" + ROUTING_KEY + "'],"
+                        + " [type: 'trigger', routingKey: '" + ROUTING_KEY + "', logExcerptLines: 'all']])", true));
+
+        WorkflowRun run = jenkins.assertBuildStatus(Result.FAILURE, job.scheduleBuild2(0));
+        jenkins.assertLogContains("logExcerptLines must be a whole number, not 'all'", run);
+        assertTrue(server.getRequests().isEmpty());
+    }
+
+    @Test
+    public void testBatchStepRejectsUnknownParameters() throws Exception {
+        WorkflowJob job = jenkins.createProject(WorkflowJob.class, "typo");
+        job.setDefinition(new CpsFlowDefinition(
+                "pagerdutyBatch(events: [[type: 'trigger', routingKey: '" + ROUTING_KEY + "', incidentSumary: 'Deploy failed']])", true));
+
+        WorkflowRun run = jenkins.assertBuildStatus(Result.FAILURE, job.scheduleBuild2(0));
+        jenkins.assertLogContains("Unknown parameter 'incidentSumary' for PagerDuty trigger events, expected type, routingKey,", run);
+        assertTrue(server.getRequests().isEmpty());
+    }
+}
@@ -0,0 +1,102 @@
+package org.jenkinsci.plugins.pagerduty.transport;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final CircuitBreaker breaker = new CircuitBreaker(10, 4, 50, 30000);
+
+    @Test
+    public void testOpensOnceTheFailureRateIsReached() {
+        record(true, 0);
+        record(true, 0);
+        record(true, 0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        record(false, 0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(30 * SECOND, breaker.tryAcquire(0).getWaitNanos());
+        assertEquals(20 * SECOND, breaker.tryAcquire(10 * SECOND).getWaitNanos());
+    }
+
+    @Test
+    public void testOldOutcomesLeaveTheWindow() {
+        for (int i = 0; i < 10; i++) {
+            record(false, 0);
+        }
+        for (int i = 0; i < 4; i++) {
+            record(true, 0);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        // 5 of the last 10 now failed
+        record(true, 0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testHalfOpenLetsOneProbeThrough() {
+        for (int i = 0; i < 4; i++) {
+            record(true, 0);
+        }
+        long probe = 30 * SECOND;
+        CircuitBreaker.Permit permit = breaker.tryAcquire(probe);
+        assertTrue(permit.isGranted());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire(probe).isGranted());
+
+        breaker.record(permit, true, probe);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire(probe + SECOND).getWaitNanos() > 0);
+
+        probe += 30 * SECOND;
+        permit = breaker.tryAcquire(probe);
+        assertTrue(permit.isGranted());
+        breaker.record(permit, false, probe);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire(probe).isGranted());
+        assertTrue(breaker.tryAcquire(probe).isGranted());
+    }
+
+    @Test
+    public void testOnlyTheProbeDecides() {
+        CircuitBreaker.Permit slow = breaker.tryAcquire(0);
+        for (int i = 0; i < 4; i++) {
+            record(true, 0);
+        }
+        long probe = 30 * SECOND;
+        CircuitBreaker.Permit permit = breaker.tryAcquire(probe);
+        assertTrue(permit.isGranted());
+
+        // a request sent before the circuit opened completes while the probe is in flight
+        breaker.record(slow, false, probe);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire(probe).isGranted());
+
+        breaker.record(permit, true, probe);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        breaker.record(slow, true, probe);
+        breaker.record(permit, true, probe);
+        assertEquals(30 * SECOND, breaker.tryAcquire(probe).getWaitNanos());
+    }
+
+    @Test
+    public void testOnlyServerErrorsAreFailures() {
+        assertTrue(CircuitBreaker.isFailure(503));
+        assertFalse(CircuitBreaker.isFailure(429));
+        assertFalse(CircuitBreaker.isFailure(400));
+        assertFalse(CircuitBreaker.isFailure(202));
+    }
+
+    private void record(boolean failed, long now) {
+        breaker.record(breaker.tryAcquire(now), failed, now);
+    }
+}
@@ -0,0 +1,95 @@
+package org.jenkinsci.plugins.pagerduty.transport;
+
+import org.jenkinsci.plugins.pagerduty.metrics.PagerDutyMetrics;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class DuplicateFilterTest {
+
+    private static final String TRIGGER = "{\"routing_key\":\"key\",\"event_action\":\"trigger\",\"dedup_key\":\"d1\"}";
+
+    private final List<CompletableFuture<PagerDutyTransport.Response>> sent = new ArrayList<>();
+
+    private long now;
+
+    private final DuplicateFilter filter = new DuplicateFilter(3, event -> {
+        CompletableFuture<PagerDutyTransport.Response> future = new CompletableFuture<>();
+        sent.add(future);
+        return future;
+    }, () -> now);
+
+    @Test
+    public void testIdenticalEventWithinTheWindowIsNotSent() {
+        long suppressed = PagerDutyMetrics.get().getCount("events.suppressed");
+        CompletableFuture<PagerDutyTransport.Response> first = filter.submit(event("key", TRIGGER), "d1", 60);
+        now += TimeUnit.SECONDS.toNanos(30);
+        CompletableFuture<PagerDutyTransport.Response> second = filter.submit(event("key", TRIGGER), "d1", 60);
+        assertEquals(1, sent.size());
+        assertEquals(suppressed + 1, PagerDutyMetrics.get().getCount("events.suppressed"));
+
+        PagerDutyTransport.Response response = new PagerDutyTransport.Response(202, "{}");
+        sent.get(0).complete(response);
+        assertSame(response, first.join());
+        assertSame(response, second.join());
+
+        now += TimeUnit.SECONDS.toNanos(31);
+        filter.submit(event("key", TRIGGER), "d1", 60);
+        assertEquals(2, sent.size());
+    }
+
+    @Test
+    public void testDifferentEventsAreSent() {
+        filter.submit(event("key", TRIGGER), "d1", 60);
+        filter.submit(event("other", TRIGGER), "d1", 60);
+        filter.submit(event("key", TRIGGER.replace("d1", "d2")), "d2", 60);
+        // an update to the same incident
+        filter.submit(event("key", TRIGGER.replace("}", ",\"payload\":{}}")), "d1", 60);
+        filter.submit(event("key", TRIGGER), "d1", 0);
+        assertEquals(5, sent.size());
+    }
+
+    @Test
+    public void testFailedEventsAndResolvedIncidentsAreForgotten() {
+        filter.submit(event("key", TRIGGER), "d1", 60);
+        sent.get(0).complete(new PagerDutyTransport.Response(400, "{}"));
+        filter.submit(event("key", TRIGGER), "d1", 60);
+        assertEquals(2, sent.size());
+
+        filter.forget(Endpoint.EVENTS, "key", "d1");
+        filter.submit(event("key", TRIGGER), "d1", 60);
+        assertEquals(3, sent.size());
+    }
+
+    @Test
+    public void testOldestEventsAreForgottenFirst() {
+        for (int i = 0; i < 4; i++) {
+            filter.submit(new OutboundEvent(Endpoint.CHANGE_EVENTS, "key", "{\"summary\":\"" + i + "\"}"), null, 60);
+        }
+        assertEquals(3, filter.size());
+        filter.submit(new OutboundEvent(Endpoint.CHANGE_EVENTS, "key", "{\"summary\":\"3\"}"), null, 60);
+        filter.submit(new OutboundEvent(Endpoint.CHANGE_EVENTS, "key", "{\"summary\":\"0\"}"), null, 60);
+        assertEquals(5, sent.size());
+    }
+
+    @Test
+    public void testEventsExpireWithTheirOwnWindow() {
+        filter.submit(event("key", TRIGGER), "d1", 600);
+        filter.submit(event("other", TRIGGER), "d1", 10);
+        now += TimeUnit.SECONDS.toNanos(20);
+        filter.submit(event("key", TRIGGER), "d1", 10);
+        filter.submit(event("other", TRIGGER), "d1", 10);
+        // the window changed: the first event is still remembered, the second one is not
+        assertEquals(3, sent.size());
+    }
+
+    private static OutboundEvent event(String routingKey, String json) {
+        return new OutboundEvent(Endpoint.EVENTS, routingKey, json);
+    }
+}
@@ -0,0 +1,79 @@
+package org.jenkinsci.plugins.pagerduty.transport;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class EventEncoderTest {
+
+    @Test
+    public void testEncodesConsecutiveEventsIndependently() throws IOException {
+        assertEquals("{\"n\":1,\"ü\":\"€\"}", decode(EventEncoder.encode(json -> {
+            json.writeStartObject();
+            json.writeNumberField("n", 1);
+            json.writeStringField("ü", "€");
+            json.writeEndObject();
+        })));
+        assertEquals("{\"n\":2,\"details\":{\"a\":[1]}}", decode(EventEncoder.encode(json -> {
+            json.writeStartObject();
+            json.writeNumberField("n", 2);
+            json.writeObjectField("details", Collections.singletonMap("a", Collections.singletonList(1)));
+            json.writeEndObject();
+        })));
+    }
+
+    @Test
+    public void testRecoversFromFailedEncoding() throws IOException {
+        try {
+            EventEncoder.encode(json -> {
+                json.writeStartObject();
+                json.writeStringField("partial", "x");
+                throw new IOException("failed");
+            });
+            fail();
+        } catch (IOException expected) {
+            // the half-written event must not leak into the next one
+        }
+        assertEquals("{\"ok\":true}", decode(EventEncoder.encode(json -> {
+            json.writeStartObject();
+            json.writeBooleanField("ok", true);
+            json.writeEndObject();
+        })));
+    }
+
+    @Test
+    public void testTimestampsAreUtcWithMilliseconds() throws IOException {
+        assertEquals("{\"timestamp\":\"1970-01-01T00:00:01.005Z\",\"text\":\"t\"}", decode(EventEncoder.encode(json -> {
+            json.writeStartObject();
+            EventEncoder.writeTimestampField(json, "timestamp", new Date(1005));
+            EventEncoder.writeOptionalField(json, "missing", null);
+            EventEncoder.writeOptionalField(json, "text", "t");
+            json.writeEndObject();
+        })));
+    }
+
+    @Test
+    public void testWrapsAnEncodedValue() throws IOException {
+        byte[] payload = "{\"summary\":\"€\",\"custom_details\":{}}".getBytes(StandardCharsets.UTF_8);
+        assertEquals("{\"routing_key\":\"key\",\"payload\":{\"summary\":\"€\",\"custom_details\":{}}}",
+                decode(EventEncoder.encode(json -> json.writeStringField("routing_key", "key"), "payload", payload)));
+        assertEquals("{\"payload\":{\"summary\":\"€\",\"custom_details\":{}}}",
+                decode(EventEncoder.encode(json -> { }, "payload", payload)));
+
+        // larger than the generator's buffer
+        String summary = String.join("", Collections.nCopies(20000, "x"));
+        byte[] large = ("{\"summary\":\"" + summary + "\"}").getBytes(StandardCharsets.UTF_8);
+        assertEquals("{\"routing_key\":\"key\",\"payload\":{\"summary\":\"" + summary + "\"}}",
+                decode(EventEncoder.encode(json -> json.writeStringField("routing_key", "key"), "payload", large)));
+    }
+
+    private static String decode(byte[] json) {
+        return new String(json, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,98 @@
+package org.jenkinsci.plugins.pagerduty.transport;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EventSpoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testUnacknowledgedEventsAreReplayedInOrder() throws IOException {
+        File directory = folder.newFolder();
+        try (EventSpool spool = new EventSpool(directory, 1024)) {
+            for (int i = 0; i < 10; i++) {
+                spool.append(new OutboundEvent(Endpoint.EVENTS, i % 2 == 0 ? "routingKey" : null, "{\"n\":" + i + "}"));
+            }
+            spool.acknowledge(1);
+            spool.acknowledge(3);
+        }
+
+        try (EventSpool spool = new EventSpool(directory, 1024)) {
+            EventSpool.Cursor cursor = spool.cursor();
+            List<EventSpool.Record> records = spool.read(cursor, 100);
+
+            assertEquals(8, records.size());
+            assertEquals(2, records.get(0).getSequence());
+            assertEquals(4, records.get(1).getSequence());
+            assertNull(records.get(0).getEvent().getRoutingKey());
+            assertEquals("routingKey", records.get(2).getEvent().getRoutingKey());
+            assertEquals(Endpoint.EVENTS, records.get(7).getEvent().getEndpoint());
+            assertEquals("{\"n\":9}", records.get(7).getEvent().getPayload());
+            assertTrue(spool.read(cursor, 100).isEmpty());
+            assertEquals(11, spool.append(new OutboundEvent(Endpoint.CHANGE_EVENTS, "routingKey", "{}")));
+        }
+    }
+
+    @Test
+    public void testEventsAreOnlyReadOnceFlushed() throws IOException {
+        try (EventSpool spool = new EventSpool(folder.newFolder(), 1024)) {
+            EventSpool.Cursor cursor = spool.cursor();
+            spool.append(new OutboundEvent(Endpoint.CHANGE_EVENTS, "routingKey", "{}"));
+
+            assertTrue(spool.read(cursor, 100).isEmpty());
+            spool.flush();
+            assertEquals(1, spool.read(cursor, 100).size());
+        }
+    }
+
+    @Test
+    public void testAcknowledgedSegmentsAreDeleted() throws IOException {
+        File directory = folder.newFolder();
+        try (EventSpool spool = new EventSpool(directory, 64)) {
+            for (int i = 1; i <= 5; i++) {
+                spool.append(new OutboundEvent(Endpoint.EVENTS, "routingKey", "{\"n\":" + i + "}"));
+                spool.flush();
+            }
+            for (int i = 1; i <= 5; i++) {
+                spool.acknowledge(i);
+            }
+            spool.flush();
+
+            String[] segments = directory.list((dir, name) -> name.endsWith(".log"));
+            assertEquals(Arrays.toString(segments), 1, segments.length);
+            assertEquals(0, spool.getPendingCount());
+        }
+    }
+
+    @Test
+    public void testTornWriteIsTruncatedOnRecovery() throws IOException {
+        File directory = folder.newFolder();
+        try (EventSpool spool = new EventSpool(directory, 1024)) {
+            spool.append(new OutboundEvent(Endpoint.EVENTS, "routingKey", "{}"));
+        }
+        File[] segments = directory.listFiles((dir, name) -> name.endsWith(".log"));
+        try (FileOutputStream out = new FileOutputStream(segments[0], true)) {
+            out.write(new byte[] {0, 0, 0, 50, 1, 2});
+        }
+
+        try (EventSpool spool = new EventSpool(directory, 1024)) {
+            assertEquals(1, spool.read(spool.cursor(), 100).size());
+            assertEquals(2, spool.append(new OutboundEvent(Endpoint.EVENTS, "routingKey", "{}")));
+            spool.flush();
+            assertEquals(2, spool.read(spool.cursor(), 100).size());
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package org.jenkinsci.plugins.pagerduty.transport;
+
+import org.jenkinsci.plugins.pagerduty.PagerDutyGlobalConfiguration;
+import org.jenkinsci.plugins.pagerduty.changeevents.ChangeEventsAPI;
+import org.jenkinsci.plugins.pagerduty.metrics.PagerDutyMetrics;
+import org.jenkinsci.plugins.pagerduty.util.IncidentEventsAPI;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PagerDutyTransportTest {
+
+    private static final String TRIGGER = "{\"routing_key\":\"R0123456789abcdef0123456789abcde\",\"event_action\":\"trigger\","
+            + "\"dedup_key\":\"team/service-42\",\"payload\":{\"summary\":\"team/service #42 failed\",\"source\":\"jenkins\",\"severity\":\"error\"}}";
+
+    private static final String CHANGE = "{\"routing_key\":\"R0123456789abcdef0123456789abcde\","
+            + "\"payload\":{\"summary\":\"team/service #43 built successfully\",\"source\":\"jenkins\"}}";
+
+    private StubEventsServer server;
+
+    @Before
+    public void startServer() throws Exception {
+        server = new StubEventsServer();
+        PagerDutyGlobalConfiguration.get().setEventsApiUrl(server.getBaseUrl() + "/");
+    }
+
+    @After
+    public void stopServer() {
+        PagerDutyGlobalConfiguration configuration = PagerDutyGlobalConfiguration.get();
+        configuration.setEventsApiUrl(null);
+        configuration.setReadTimeout(30);
+        configuration.setRequestTimeout(60);
+        configuration.setQueueCapacity(EventDispatcher.DEFAULT_QUEUE_CAPACITY);
+        PagerDutyTransport.reconfigure(configuration);
+        EventDispatcher.get().reconfigure(configuration);
+        server.close();
+    }
+
+    @Test
+    public void testEventsAreSentToTheConfiguredUrl() throws Exception {
+        assertEquals(server.getBaseUrl() + "/v2/enqueue", Endpoint.EVENTS.getUrl());
+
+        IncidentEventsAPI.Result result = IncidentEventsAPI.enqueue("R0123456789abcdef0123456789abcde", TRIGGER).get(30, TimeUnit.SECONDS);
+        assertTrue(result.isSuccessful());
+        assertEquals("team/service-42", result.getDedupKey());
+
+        assertEquals(202, ChangeEventsAPI.enqueue("R0123456789abcdef0123456789abcde", CHANGE).get(30, TimeUnit.SECONDS).getCode());
+        assertEquals(1, server.getAccepted(Endpoint.EVENTS).size());
+        assertEquals("team/service #43 built successfully",
+                server.getAccepted(Endpoint.CHANGE_EVENTS).get(0).path("payload").path("summary").asText());
+    }
+
+    @Test
+    public void testRejectionsAreReported() throws Exception {
+        IncidentEventsAPI.Result result = IncidentEventsAPI.enqueue(null, "{\"event_action\":\"trigger\"}")
+                .get(30, TimeUnit.SECONDS);
+        assertFalse(result.isSuccessful());
+        assertEquals(400, result.getCode());
+        assertEquals("Event object is invalid", result.getMessage());
+        assertTrue(result.getErrors().contains("routing_key"));
+    }
+
+    @Test
+    public void testInjectedFailuresAreReturnedAndCounted() throws Exception {
+        long throttled = PagerDutyMetrics.get().getCount("responses.429");
+        server.failNext(1, 429).setRetryAfter("3");
+
+        PagerDutyTransport.Response response = PagerDutyTransport.get().post(Endpoint.CHANGE_EVENTS, null, CHANGE.getBytes("UTF-8"));
+        assertEquals(429, response.getCode());
+        assertEquals("3", response.getRetryAfter());
+        assertEquals(throttled + 1, PagerDutyMetrics.get().getCount("responses.429"));
+
+        assertEquals(202, ChangeEventsAPI.enqueue("R0123456789abcdef0123456789abcde", CHANGE).get(30, TimeUnit.SECONDS).getCode());
+    }
+
+    @Test
+    public void testSlowResponsesTimeOut() throws Exception {
+        PagerDutyGlobalConfiguration configuration = PagerDutyGlobalConfiguration.get();
+        configuration.setReadTimeout(1);
+        PagerDutyTransport.reconfigure(configuration);
+        server.setLatency(3, TimeUnit.SECONDS);
+        try {
+            PagerDutyTransport.get().post(Endpoint.CHANGE_EVENTS, null, CHANGE.getBytes("UTF-8"));
+            fail("expected a read timeout");
+        } catch (SocketTimeoutException e) {
+            // expected
+        }
+
+        configuration.setReadTimeout(30);
+        configuration.setRequestTimeout(1);
+        PagerDutyTransport.reconfigure(configuration);
+        long start = System.nanoTime();
+        try {
+            PagerDutyTransport.get().post(Endpoint.CHANGE_EVENTS, null, CHANGE.getBytes("UTF-8"));
+            fail("expected the request to be aborted");
+        } catch (InterruptedIOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("did not complete within 1000ms"));
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3));
+    }
+
+    @Test
+    public void testQueueCapacityAppliesAtRuntime() throws Exception {
+        PagerDutyGlobalConfiguration configuration = PagerDutyGlobalConfiguration.get();
+        configuration.setQueueCapacity(1);
+        EventDispatcher.get().reconfigure(configuration);
+        server.setLatency(500, TimeUnit.MILLISECONDS);
+
+        CompletableFuture<IncidentEventsAPI.Result> first = IncidentEventsAPI.enqueue("R0123456789abcdef0123456789abcde", TRIGGER);
+        try {
+            IncidentEventsAPI.enqueue("R0123456789abcdef0123456789abcde", TRIGGER).get(30, TimeUnit.SECONDS);
+            fail("expected the event to be rejected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        assertTrue(first.get(30, TimeUnit.SECONDS).isSuccessful());
+    }
+
+    @Test
+    public void testDispatcherRetriesUntilAccepted() throws Exception {
+        server.failNext(1, 503).failNext(1, 429).setRetryAfter("0").setLatency(20, TimeUnit.MILLISECONDS);
+
+        IncidentEventsAPI.Result result = IncidentEventsAPI.enqueue("R0123456789abcdef0123456789abcde", TRIGGER)
+                .get(30, TimeUnit.SECONDS);
+        assertTrue(result.isSuccessful());
+        assertEquals(3, server.getRequests().size());
+        assertEquals(503, server.getRequests().get(0).status);
+        assertEquals(429, server.getRequests().get(1).status);
+        assertEquals(1, server.getAccepted(Endpoint.EVENTS).size());
+    }
+
+    @Test
+    public void testDispatcherKeepsWorkingAfterShutdown() throws Exception {
+        EventDispatcher.shutdown();
+
+        IncidentEventsAPI.Result result = IncidentEventsAPI.enqueue("R0123456789abcdef0123456789abcde", TRIGGER)
+                .get(30, TimeUnit.SECONDS);
+        assertTrue(result.isSuccessful());
+        assertEquals(0, EventDispatcher.get().getSpooled());
+    }
+}
@@ -0,0 +1,56 @@
+package org.jenkinsci.plugins.pagerduty.transport;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final RateLimiter limiter = new RateLimiter();
+
+    @Test
+    public void testBurstIsAllowedThenPaced() {
+        long now = 0;
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.tryAcquire("key", 60, 5, now));
+        }
+
+        long wait = limiter.tryAcquire("key", 60, 5, now);
+        assertEquals(SECOND, wait);
+        assertTrue(limiter.tryAcquire("key", 60, 5, now + wait / 2) > 0);
+        assertEquals(0, limiter.tryAcquire("key", 60, 5, now + wait));
+    }
+
+    @Test
+    public void testKeysAreLimitedIndependently() {
+        assertEquals(0, limiter.tryAcquire("first", 60, 1, 0));
+        assertTrue(limiter.tryAcquire("first", 60, 1, 0) > 0);
+        assertEquals(0, limiter.tryAcquire("second", 60, 1, 0));
+        assertEquals(2, limiter.size());
+    }
+
+    @Test
+    public void testBucketRefillsButDoesNotExceedBurst() {
+        assertEquals(0, limiter.tryAcquire("key", 60, 2, 0));
+        assertEquals(0, limiter.tryAcquire("key", 60, 2, 0));
+
+        long later = 100 * SECOND;
+        assertEquals(0, limiter.tryAcquire("key", 60, 2, later));
+        assertEquals(0, limiter.tryAcquire("key", 60, 2, later));
+        assertTrue(limiter.tryAcquire("key", 60, 2, later) > 0);
+    }
+
+    @Test
+    public void testDisabledOrUnkeyedEventsAreNotLimited() {
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, limiter.tryAcquire("key", 0, 1, 0));
+            assertEquals(0, limiter.tryAcquire(null, 60, 1, 0));
+        }
+        assertEquals(0, limiter.size());
+    }
+}
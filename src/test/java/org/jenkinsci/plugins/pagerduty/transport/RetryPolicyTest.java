@@ -0,0 +1,69 @@
+package org.jenkinsci.plugins.pagerduty.transport;
+
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+    private final RetryPolicy policy = new RetryPolicy(100, 10000, 5);
+
+    @Test
+    public void testClassifiesResponses() {
+        assertTrue(policy.isRetryable(429));
+        assertTrue(policy.isRetryable(500));
+        assertTrue(policy.isRetryable(503));
+        assertFalse(policy.isRetryable(202));
+        assertFalse(policy.isRetryable(400));
+        assertFalse(policy.isRetryable(404));
+    }
+
+    @Test
+    public void testClassifiesExceptions() {
+        assertTrue(policy.isRetryable(new ConnectTimeoutException()));
+        assertTrue(policy.isRetryable(new SocketTimeoutException()));
+        assertTrue(policy.isRetryable(new IOException("Connection reset")));
+        assertFalse(policy.isRetryable(new ClientProtocolException()));
+    }
+
+    @Test
+    public void testDelaysStayWithinJitterBounds() {
+        long previous = 0;
+        for (int i = 0; i < 1000; i++) {
+            long delay = policy.nextDelay(previous, null);
+            assertTrue(delay + " after " + previous, delay >= 100);
+            assertTrue(delay + " after " + previous, delay <= Math.max(100, Math.min(10000, previous * 3)));
+            previous = delay;
+        }
+    }
+
+    @Test
+    public void testHonoursRetryAfter() {
+        assertEquals(7000, policy.nextDelay(100, "7"));
+        assertEquals(100, policy.nextDelay(5000, "0"));
+
+        long now = System.currentTimeMillis();
+        String date = DateUtils.formatDate(new Date(now + 60000));
+        long delay = RetryPolicy.parseRetryAfter(date, now);
+        assertTrue(String.valueOf(delay), delay > 58000 && delay <= 60000);
+
+        assertEquals(-1, RetryPolicy.parseRetryAfter("soon", now));
+        assertEquals(-1, RetryPolicy.parseRetryAfter(null, now));
+    }
+
+    @Test
+    public void testSpooledEventsGetAtLeastTheCallersAttempts() {
+        assertEquals(5, policy.getMaxSpooledAttempts());
+        assertEquals(50, new RetryPolicy(100, 10000, 5, 50).getMaxSpooledAttempts());
+        assertEquals(5, new RetryPolicy(100, 10000, 5, 2).getMaxSpooledAttempts());
+    }
+}
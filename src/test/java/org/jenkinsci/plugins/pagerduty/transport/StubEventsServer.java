@@ -0,0 +1,247 @@
+package org.jenkinsci.plugins.pagerduty.transport;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-process stand-in for the PagerDuty Events API v2, implementing {@code /v2/enqueue} and
+ * {@code /v2/change/enqueue} on a local port.
+ *
+ * Accepted events are answered as PagerDuty does and recorded. Latency, throttling (429) and server
+ * errors (5xx) can be injected, either for the next few requests or at random, to measure throughput
+ * and resilience without a network. Point the plugin at it with
+ * {@code PagerDutyGlobalConfiguration#setEventsApiUrl(getBaseUrl())}.
+ */
+public final class StubEventsServer implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private final ConcurrentLinkedQueue<Request> requests = new ConcurrentLinkedQueue<>();
+
+    private final ConcurrentLinkedQueue<Integer> injected = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private volatile long latencyMillis;
+
+    private volatile double errorRate;
+
+    private volatile int errorStatus = 500;
+
+    private volatile String retryAfter;
+
+    public StubEventsServer() throws IOException {
+        this(16);
+    }
+
+    /**
+     * @param threads Requests handled concurrently, as PagerDuty would with that many connections
+     */
+    public StubEventsServer(int threads) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        for (Endpoint endpoint : Endpoint.values()) {
+            server.createContext(endpoint.getPath(), exchange -> handle(endpoint, exchange));
+        }
+        server.start();
+    }
+
+    /**
+     * @return The URL to configure as the Events API base URL
+     */
+    public String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * Delays every response, as a slow network or a loaded PagerDuty would.
+     */
+    public StubEventsServer setLatency(long latency, TimeUnit unit) {
+        this.latencyMillis = unit.toMillis(latency);
+        return this;
+    }
+
+    /**
+     * Answers the next {@code count} requests with {@code status} instead of accepting them.
+     */
+    public StubEventsServer failNext(int count, int status) {
+        for (int i = 0; i < count; i++) {
+            injected.add(status);
+        }
+        return this;
+    }
+
+    /**
+     * Answers a random share of requests with {@code status} instead of accepting them.
+     *
+     * @param rate Between 0 and 1
+     */
+    public StubEventsServer setErrorRate(double rate, int status) {
+        this.errorStatus = status;
+        this.errorRate = rate;
+        return this;
+    }
+
+    /**
+     * Sets the {@code Retry-After} header sent with injected 429s and 503s, or {@code null} for none.
+     */
+    public StubEventsServer setRetryAfter(String retryAfter) {
+        this.retryAfter = retryAfter;
+        return this;
+    }
+
+    /**
+     * @return Every request received so far, in the order they arrived, including failed ones
+     */
+    public List<Request> getRequests() {
+        return new ArrayList<>(requests);
+    }
+
+    /**
+     * @return The events that were accepted for an endpoint
+     */
+    public List<JsonNode> getAccepted(Endpoint endpoint) {
+        List<JsonNode> accepted = new ArrayList<>();
+        for (Request request : requests) {
+            if (request.endpoint == endpoint && request.status == 202) {
+                accepted.add(request.event);
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * @return The most requests handled at the same time
+     */
+    public int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(Endpoint endpoint, HttpExchange exchange) throws IOException {
+        int concurrent = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(concurrent, Math::max);
+        try {
+            byte[] body = IOUtils.toByteArray(exchange.getRequestBody());
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            if (!"POST".equals(exchange.getRequestMethod()) || !endpoint.getPath().equals(exchange.getRequestURI().getPath())) {
+                respond(endpoint, exchange, null, 404, error("Not found", null));
+                return;
+            }
+            JsonNode event;
+            try {
+                event = MAPPER.readTree(body);
+            } catch (IOException e) {
+                respond(endpoint, exchange, null, 400, error("Event object is invalid", "Malformed JSON"));
+                return;
+            }
+            Integer status = injected.poll();
+            if (status == null && errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                status = errorStatus;
+            }
+            if (status != null) {
+                if ((status == 429 || status == 503) && retryAfter != null) {
+                    exchange.getResponseHeaders().set("Retry-After", retryAfter);
+                }
+                respond(endpoint, exchange, event, status, status == 429
+                        ? error("Requests for this service are arriving too quickly. Please retry later.", null)
+                        : error("Internal error", null));
+                return;
+            }
+            String routingKey = event.path("routing_key").asText("");
+            if (routingKey.isEmpty()) {
+                respond(endpoint, exchange, event, 400, error("Event object is invalid", "'routing_key' is missing or blank"));
+                return;
+            }
+            ObjectNode response = MAPPER.createObjectNode().put("status", "success");
+            if (endpoint == Endpoint.EVENTS) {
+                String dedupKey = event.path("dedup_key").asText("");
+                response.put("message", "Event processed")
+                        .put("dedup_key", dedupKey.isEmpty() ? UUID.randomUUID().toString().replace("-", "") : dedupKey);
+            } else {
+                response.put("message", "Change event processed");
+            }
+            respond(endpoint, exchange, event, 202, response);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private static ObjectNode error(String message, String error) {
+        ObjectNode response = MAPPER.createObjectNode().put("status", "invalid event").put("message", message);
+        if (error != null) {
+            response.putArray("errors").add(error);
+        }
+        return response;
+    }
+
+    private void respond(Endpoint endpoint, HttpExchange exchange, JsonNode event, int status, ObjectNode response) throws IOException {
+        requests.add(new Request(endpoint, event, status));
+        byte[] body = MAPPER.writeValueAsBytes(response);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * A request as received, with the status it was answered with.
+     */
+    public static final class Request {
+        public final Endpoint endpoint;
+
+        /**
+         * The parsed event, or {@code null} if it was not valid JSON.
+         */
+        public final JsonNode event;
+
+        public final int status;
+
+        Request(Endpoint endpoint, JsonNode event, int status) {
+            this.endpoint = endpoint;
+            this.event = event;
+            this.status = status;
+        }
+
+        @Override
+        public String toString() {
+            return endpoint + " " + status + " " + event;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.jenkinsci.plugins.pagerduty.transport;
+
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.jenkinsci.plugins.pagerduty.PagerDutyGlobalConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends events to a {@link StubEventsServer} through the pooled client, to see how throughput holds up
+ * with PagerDuty latency and errors.
+ */
+@JmhBenchmark
+public class TransportBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Server {
+        @Param({"0", "50"})
+        long latencyMillis;
+
+        @Param({"0", "0.1"})
+        double errorRate;
+
+        StubEventsServer server;
+
+        byte[] event;
+
+        @Setup
+        public void setup() throws IOException {
+            server = new StubEventsServer(32).setLatency(latencyMillis, TimeUnit.MILLISECONDS).setErrorRate(errorRate, 503);
+            PagerDutyGlobalConfiguration.get().setEventsApiUrl(server.getBaseUrl());
+            event = ("{\"routing_key\":\"R0123456789abcdef0123456789abcde\",\"event_action\":\"trigger\","
+                    + "\"payload\":{\"summary\":\"team/service #42 failed\",\"source\":\"jenkins\",\"severity\":\"error\"}}")
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+
+        @TearDown
+        public void tearDown() {
+            PagerDutyGlobalConfiguration.get().setEventsApiUrl(null);
+            server.close();
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public PagerDutyTransport.Response post(Server server) throws IOException {
+        return PagerDutyTransport.get().post(Endpoint.EVENTS, "R0123456789abcdef0123456789abcde", server.event);
+    }
+}
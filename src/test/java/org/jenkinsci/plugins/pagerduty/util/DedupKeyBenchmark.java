@@ -0,0 +1,73 @@
+package org.jenkinsci.plugins.pagerduty.util;
+
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Recovers the dedup key from build logs of 1 KB up to 500 MB, with the key printed either near the end of
+ * the log, as when the trigger is the last step, or at its start, which makes the scan read the whole log.
+ */
+@JmhBenchmark
+public class DedupKeyBenchmark {
+
+    private static final byte[] LINE = "[INFO] Tests run: 42, Failures: 0, Errors: 0, Skipped: 1, Time elapsed: 0.317 s\n"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] KEY = "PagerDuty dedupKey: <<0f8b0c4e9a6d4a2b8e7c1d3f5a9b2c6e>>\n"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    @State(Scope.Benchmark)
+    public static class Log {
+        @Param({"1024", "1048576", "67108864", "524288000"})
+        long size;
+
+        @Param({"tail", "head"})
+        String keyAt;
+
+        File file;
+
+        String text;
+
+        @Setup
+        public void setup() throws IOException {
+            file = File.createTempFile("pagerduty-bench", ".log");
+            long keyOffset = "head".equals(keyAt) ? 0 : Math.max(0, size - 4 * LINE.length);
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file.toPath()), 1 << 16)) {
+                for (long written = 0; written < size; ) {
+                    byte[] line = written <= keyOffset && keyOffset < written + LINE.length ? KEY : LINE;
+                    out.write(line);
+                    written += line.length;
+                }
+            }
+            // holding the larger logs in memory only measures the heap
+            text = size <= 1 << 20 ? new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII) : null;
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    @Benchmark
+    public String scanLogFile(Log log) throws IOException {
+        return DedupKeyScanner.findLast(log.file);
+    }
+
+    @Benchmark
+    public String scanLogText(Log log) {
+        return log.text != null ? PagerDutyUtils.extractDedupKey(log.text) : null;
+    }
+}
@@ -0,0 +1,90 @@
+package org.jenkinsci.plugins.pagerduty.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class DedupKeyScannerTest {
+
+    private static final String FIRST = "0123456789abcdef0123456789abcdef";
+
+    private static final String LAST = "fedcba9876543210fedcba9876543210";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFindsLastKeyInText() {
+        assertEquals(LAST, DedupKeyScanner.findLast("PagerDuty dedupKey: <<" + FIRST + ">>\nagain <<" + LAST + ">> done"));
+        assertNull(DedupKeyScanner.findLast("no key <<>> or <<UPPER>> here"));
+        assertNull(DedupKeyScanner.findLast((String) null));
+    }
+
+    @Test
+    public void testFindsKeySplitAcrossEveryChunkBoundary() throws IOException {
+        for (int chunkSize = 1; chunkSize <= 64; chunkSize++) {
+            File log = write(filler(100) + "<<" + FIRST + ">>" + filler(37) + "<<" + LAST + ">>" + filler(23));
+            try (RandomAccessFile file = new RandomAccessFile(log, "r")) {
+                assertEquals("chunk size " + chunkSize, LAST, DedupKeyScanner.findLastReverse(file, chunkSize));
+            }
+            byte[] bytes = (filler(100) + "<<" + FIRST + ">>" + filler(37) + "<<" + LAST + ">>" + filler(23)).getBytes(StandardCharsets.UTF_8);
+            assertEquals("chunk size " + chunkSize, LAST, DedupKeyScanner.findLast(new ByteArrayInputStream(bytes), chunkSize));
+        }
+    }
+
+    @Test
+    public void testScansLargeLogFromTheEnd() throws IOException {
+        File log = folder.newFile("log");
+        try (OutputStream out = new FileOutputStream(log)) {
+            out.write(("<<" + FIRST + ">>\n").getBytes(StandardCharsets.UTF_8));
+            byte[] line = (filler(99) + "\n").getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < 50000; i++) {
+                out.write(line);
+            }
+        }
+        assertEquals(FIRST, DedupKeyScanner.findLast(log));
+    }
+
+    @Test
+    public void testReadsCompressedLog() throws IOException {
+        File log = folder.newFile("log.gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(log))) {
+            out.write(("<<" + FIRST + ">>\n" + filler(200000) + "\n<<" + LAST + ">>\n" + filler(10)).getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(LAST, DedupKeyScanner.findLast(log));
+    }
+
+    @Test
+    public void testMissingOrKeylessLog() throws IOException {
+        assertNull(DedupKeyScanner.findLast(new File(folder.getRoot(), "missing")));
+        assertNull(DedupKeyScanner.findLast(write(filler(1000))));
+    }
+
+    private File write(String content) throws IOException {
+        File log = folder.newFile();
+        try (OutputStream out = new FileOutputStream(log)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return log;
+    }
+
+    private static String filler(int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(i % 50 == 49 ? '\n' : '.');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,91 @@
+package org.jenkinsci.plugins.pagerduty.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LogExcerptTest {
+
+    private static final String LOG = "Started by user admin\nBuilding\n[ERROR] compilation failed\nFinished: FAILURE\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReturnsTheLastLines() throws IOException {
+        assertEquals("[ERROR] compilation failed\nFinished: FAILURE", LogExcerpt.tail(write("log", LOG), 2, 1024));
+        assertEquals(LOG.trim(), LogExcerpt.tail(write("log", LOG), 10, 1024));
+        assertNull(LogExcerpt.tail(new File(folder.getRoot(), "missing"), 2, 1024));
+    }
+
+    @Test
+    public void testSizeLimitKeepsWholeLines() throws IOException {
+        // "Finished: FAILURE" and its newline fit, the line before only partly
+        assertEquals("Finished: FAILURE", LogExcerpt.tail(write("log", LOG), 0, 25));
+        assertEquals("Finished: FAILURE", LogExcerpt.tail(write("log.gz", LOG), 0, 25));
+    }
+
+    @Test
+    public void testSameExcerptForEveryChunkSize() throws IOException {
+        File log = write("log", LOG);
+        byte[] bytes = LOG.getBytes(StandardCharsets.UTF_8);
+        for (int chunkSize = 1; chunkSize <= 64; chunkSize++) {
+            for (int maxBytes = 1; maxBytes <= bytes.length + 1; maxBytes++) {
+                try (RandomAccessFile file = new RandomAccessFile(log, "r")) {
+                    String reverse = new String(LogExcerpt.tailReverse(file, 3, maxBytes, chunkSize), StandardCharsets.UTF_8);
+                    String forward = new String(LogExcerpt.tail(new ByteArrayInputStream(bytes), 3, maxBytes), StandardCharsets.UTF_8);
+                    assertEquals("chunk size " + chunkSize + ", " + maxBytes + " bytes", forward, reverse);
+                    assertTrue(reverse, LOG.endsWith(reverse + "\n"));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLongLineIsCutAtACharacter() throws IOException {
+        String excerpt = LogExcerpt.tail(write("log", "éééé\n"), 0, 5);
+        assertEquals("éé", excerpt);
+    }
+
+    @Test
+    public void testRemovesConsoleNotes() throws IOException {
+        String log = "\u001B[8mha:AAAAWB+LCAAAAAAAAP9b\u001B[0m[Pipeline] sh\nFinished: FAILURE\n";
+        assertEquals("[Pipeline] sh\nFinished: FAILURE", LogExcerpt.tail(write("log", log), 5, 1024));
+    }
+
+    @Test
+    public void testReadsOnlyTheEndOfLargeLogs() throws IOException {
+        File log = folder.newFile("large");
+        try (OutputStream out = new FileOutputStream(log)) {
+            byte[] line = "0123456789012345678901234567890123456789012345678901234567890123456789\n".getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < 200000; i++) {
+                out.write(line);
+            }
+            out.write("Finished: FAILURE\n".getBytes(StandardCharsets.UTF_8));
+        }
+        String excerpt = LogExcerpt.tail(log, 0, Integer.MAX_VALUE);
+        assertTrue(excerpt.endsWith("Finished: FAILURE"));
+        assertTrue(excerpt.length() <= LogExcerpt.MAX_BYTES);
+    }
+
+    private File write(String name, String text) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        try (OutputStream out = name.endsWith(".gz") ? new GZIPOutputStream(new FileOutputStream(file)) : new FileOutputStream(file)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+}
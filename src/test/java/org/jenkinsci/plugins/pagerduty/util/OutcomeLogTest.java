@@ -0,0 +1,44 @@
+package org.jenkinsci.plugins.pagerduty.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+
+public class OutcomeLogTest {
+
+    private final ByteArrayOutputStream buildLog = new ByteArrayOutputStream();
+
+    private final OutcomeLog log = new OutcomeLog("job #1", new PrintStream(buildLog, true), StandardCharsets.UTF_8);
+
+    @Test
+    public void testOutcomesArrivingWhileTheBuildRunsAreWrittenToTheBuildLog() {
+        log.getListener().getLogger().println("Finished resolving - success");
+        log.add(Arrays.asList(CompletableFuture.completedFuture(null)));
+
+        log.close();
+        assertEquals("Finished resolving - success\n", text());
+    }
+
+    @Test
+    public void testOutcomesArrivingLaterGoToTheSystemLog() {
+        CompletableFuture<Void> outcome = new CompletableFuture<>();
+        log.getListener().getLogger().println("Triggering PagerDuty");
+        log.add(Arrays.asList(outcome, CompletableFuture.completedFuture(null)));
+
+        log.close();
+        log.getListener().getLogger().println("PagerDuty Notification Result: success");
+        outcome.complete(null);
+        assertEquals("Triggering PagerDuty\n"
+                + "PagerDuty has not answered 1 event(s) yet, the outcome will be written to the Jenkins system log\n", text());
+    }
+
+    private String text() {
+        return new String(buildLog.toByteArray(), StandardCharsets.UTF_8).replace(System.lineSeparator(), "\n");
+    }
+}
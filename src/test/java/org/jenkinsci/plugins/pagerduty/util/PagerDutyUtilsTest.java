@@ -0,0 +1,43 @@
+package org.jenkinsci.plugins.pagerduty.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.jenkinsci.plugins.pagerduty.PagerDutyParamHolder;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class PagerDutyUtilsTest {
+
+    @Test
+    public void testSplitsRoutingKeysOnCommasAndWhitespace() {
+        assertEquals(Arrays.asList("key1", "key2", "key3"), PagerDutyUtils.splitRoutingKeys(" key1, key2\nkey3 ,"));
+        assertEquals(Collections.singletonList("key1"), PagerDutyUtils.splitRoutingKeys("key1"));
+    }
+
+    @Test
+    public void testDropsDuplicateAndMissingRoutingKeys() {
+        assertEquals(Arrays.asList("key2", "key1"), PagerDutyUtils.splitRoutingKeys("key2,key1,key2"));
+        assertEquals(Collections.emptyList(), PagerDutyUtils.splitRoutingKeys(" , "));
+        assertEquals(Collections.emptyList(), PagerDutyUtils.splitRoutingKeys(null));
+    }
+
+    @Test
+    public void testEncodesCustomDetails() throws Exception {
+        PagerDutyParamHolder pdparams = new PagerDutyParamHolder("key1", null, "Build failed", null, "jenkins",
+                "error", null, null, null, null, false, false, true, false, false, false);
+        pdparams.setCustomDetails("{\"owner\":\"team\",\"retries\":3,\"flaky\":false,\"ratio\":0.5,"
+                + "\"tags\":[\"db\",null,{\"env\":\"prod\"}]}");
+        pdparams.getCustomDetails().put("log_excerpt", "line 1\nline \"2\"");
+
+        JsonNode payload = new ObjectMapper().readTree(PagerDutyUtils.encodePayload(pdparams));
+        assertEquals("Build failed", payload.path("summary").asText());
+        assertEquals("error", payload.path("severity").asText());
+        assertEquals(new ObjectMapper().readTree("{\"owner\":\"team\",\"retries\":3,\"flaky\":false,\"ratio\":0.5,"
+                + "\"tags\":[\"db\",null,{\"env\":\"prod\"}],\"log_excerpt\":\"line 1\\nline \\\"2\\\"\"}"),
+                payload.path("custom_details"));
+    }
+}
@@ -0,0 +1,58 @@
+package org.jenkinsci.plugins.pagerduty.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class TestSummaryTest {
+
+    @Test
+    public void testCountsWithoutFailures() {
+        Map<String, Object> summary = TestSummary.summarize(120, 0, 3, null, 10, 1024);
+        assertEquals(120, summary.get("total"));
+        assertEquals(0, summary.get("failed"));
+        assertEquals(3, summary.get("skipped"));
+        assertFalse(summary.containsKey("failed_tests"));
+    }
+
+    @Test
+    public void testListsTheFirstFailedTests() {
+        Map<String, Object> summary = TestSummary.summarize(100, 3, 0,
+                Arrays.asList("a.ATest.one", "a.ATest.two", "b.BTest.three").iterator(), 2, 1024);
+        assertEquals(Arrays.asList("a.ATest.one", "a.ATest.two"), summary.get("failed_tests"));
+        assertEquals(1, summary.get("more_failed_tests"));
+    }
+
+    @Test
+    public void testNamesAreLimitedByBytes() {
+        Map<String, Object> summary = TestSummary.summarize(100, 2, 0,
+                Arrays.asList("a.ATest.one", "a.ATest.two").iterator(), 10, 15);
+        assertEquals(Collections.singletonList("a.ATest.one"), summary.get("failed_tests"));
+        assertEquals(1, summary.get("more_failed_tests"));
+    }
+
+    @Test
+    public void testReadsOnlyTheNamesItSends() {
+        int[] read = new int[1];
+        Iterator<String> names = new Iterator<String>() {
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public String next() {
+                return "Test" + read[0]++;
+            }
+        };
+        Map<String, Object> summary = TestSummary.summarize(100000, 100000, 0, names, 10, 1024);
+        assertEquals(10, read[0]);
+        assertEquals(99990, summary.get("more_failed_tests"));
+    }
+}
@@ -0,0 +1,93 @@
+package org.jenkinsci.plugins.pagerduty.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TokenTemplateTest {
+
+    private final Map<String, String> variables = new HashMap<>();
+
+    private final List<String> macros = new ArrayList<>();
+
+    private final TokenTemplate.Context context = new TokenTemplate.Context() {
+        @Override
+        protected String variable(String name) {
+            return variables.get(name);
+        }
+
+        @Override
+        protected String macro(String token) {
+            macros.add(token);
+            return "<" + token + ">";
+        }
+    };
+
+    @Test
+    public void testPlainTextIsReturnedAsIs() throws Exception {
+        String text = "Build failed";
+        assertSame(text, TokenTemplate.expand(text, context));
+        assertEquals(null, TokenTemplate.expand((String) null, context));
+        assertTrue(macros.isEmpty());
+    }
+
+    @Test
+    public void testVariablesAreResolvedBeforeMacros() throws Exception {
+        variables.put("JOB_NAME", "team/service");
+        variables.put("BUILD_NUMBER", "42");
+        assertEquals("team/service #42 failed: <$BUILD_STATUS>",
+                TokenTemplate.expand("$JOB_NAME #${BUILD_NUMBER} failed: $BUILD_STATUS", context));
+        assertEquals(1, macros.size());
+    }
+
+    @Test
+    public void testVariablesTakePrecedenceOverMacros() throws Exception {
+        variables.put("BUILD_STATUS", "from the environment");
+        assertEquals("from the environment <${BUILD_STATUS, raw=true}>",
+                TokenTemplate.expand("$BUILD_STATUS ${BUILD_STATUS, raw=true}", context));
+        assertEquals(1, macros.size());
+    }
+
+    @Test
+    public void testVariableValuesAreNotExpandedAgain() throws Exception {
+        variables.put("MESSAGE", "costs $$5, see ${BUILD_URL}");
+        assertEquals("costs $$5, see ${BUILD_URL}", TokenTemplate.expand("$MESSAGE", context));
+        assertTrue(macros.isEmpty());
+    }
+
+    @Test
+    public void testMacroArgumentsStayInOneToken() throws Exception {
+        assertEquals("log: <${BUILD_LOG, maxLines=5, escapeHtml=\"}\"}>.",
+                TokenTemplate.expand("log: ${BUILD_LOG, maxLines=5, escapeHtml=\"}\"}.", context));
+    }
+
+    @Test
+    public void testLoneAndEscapedDollarsAreLiteral() throws Exception {
+        assertEquals("costs $5 or $ and ${unclosed", TokenTemplate.expand("costs $$5 or $ and ${unclosed", context));
+        assertTrue(macros.isEmpty());
+    }
+
+    @Test
+    public void testTemplatesAreCompiledOnce() {
+        assertSame(TokenTemplate.compile("${JOB_NAME}"), TokenTemplate.compile("${JOB_NAME}"));
+    }
+
+    @Test
+    public void testTemplatesInUseStayCached() {
+        TokenTemplate used = TokenTemplate.compile("${USED}");
+        for (int i = 0; i < TokenTemplate.MAX_CACHED * 2; i++) {
+            TokenTemplate.compile("${ONCE_" + i + "}");
+            if (i % 100 == 0) {
+                assertSame(used, TokenTemplate.compile("${USED}"));
+            }
+        }
+        assertSame(used, TokenTemplate.compile("${USED}"));
+    }
+}